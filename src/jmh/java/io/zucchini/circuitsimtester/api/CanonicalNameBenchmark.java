@@ -0,0 +1,60 @@
+package io.zucchini.circuitsimtester.api;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.ra4king.circuitsim.gui.ComponentPeer;
+import com.ra4king.circuitsim.gui.Properties;
+
+/**
+ * Normalizes every label in a circuit with thousands of labelled
+ * components, the way looking up components by label used to do on every
+ * walk of the circuit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CanonicalNameBenchmark {
+    private String[] labels;
+
+    @Setup
+    public void setup() throws Exception {
+        try (Fixtures fixtures = new Fixtures();
+             Subcircuit subcircuit = fixtures.load("large-labels.sim", "Large")) {
+            labels = subcircuit.getCircuitBoard().getComponents().stream()
+                               .map(ComponentPeer::getProperties)
+                               .filter(properties -> properties.getProperty(Properties.LABEL.name) != null)
+                               .map(properties -> properties.getValue(Properties.LABEL))
+                               .toArray(String[]::new);
+        }
+    }
+
+    @Benchmark
+    public void regex(Blackhole blackhole) {
+        for (String label : labels) {
+            blackhole.consume(label.toLowerCase().replaceAll("[^0-9a-z]+", ""));
+        }
+    }
+
+    @Benchmark
+    public void normalize(Blackhole blackhole) {
+        for (String label : labels) {
+            blackhole.consume(CanonicalNames.normalize(label));
+        }
+    }
+
+    @Benchmark
+    public void remembered(Blackhole blackhole) {
+        for (String label : labels) {
+            blackhole.consume(CanonicalNames.canonicalName(label));
+        }
+    }
+}
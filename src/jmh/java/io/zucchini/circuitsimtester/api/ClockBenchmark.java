@@ -0,0 +1,54 @@
+package io.zucchini.circuitsimtester.api;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Clocks the bundled CPU, one {@link Clock#tick()} at a time
+ * and in bulk with {@link Clock#runCycles(long)}. Both report the time
+ * per cycle.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ClockBenchmark {
+    private static final int CYCLES = 1000;
+
+    private Fixtures fixtures;
+    private Subcircuit cpu;
+    private Clock clock;
+
+    @Setup
+    public void setup() throws Exception {
+        fixtures = new Fixtures();
+        fixtures.verify("cpu.sim");
+        cpu = fixtures.load("cpu.sim", "CPU");
+        clock = (Clock) cpu.mockPulser("CLK", false, Subcircuit.PulserType.CLOCK);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        cpu.close();
+        fixtures.close();
+    }
+
+    @Benchmark
+    public void tick() {
+        clock.tick();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CYCLES)
+    public Clock.RunStats runCycles() {
+        return clock.runCycles(CYCLES);
+    }
+}
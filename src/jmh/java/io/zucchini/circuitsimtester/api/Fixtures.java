@@ -0,0 +1,183 @@
+package io.zucchini.circuitsimtester.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.stream.Stream;
+
+import com.ra4king.circuitsim.gui.CircuitSimRunner.NativeLibraryExtractor;
+
+/**
+ * Loads the {@code .sim} files bundled with the benchmarks. Like {@link
+ * io.zucchini.circuitsimtester.launcher.TesterLauncher}, this extracts the
+ * JavaFX native libraries first, and keeps them around until {@link
+ * #close()}, which also deletes the copies of the circuits it made.
+ * <p>
+ * Benchmarks should {@link #verify(String)} each circuit they use in
+ * their {@code @Setup}, so that a fixture which CircuitSim loads but
+ * which does not actually compute anything fails the run instead of
+ * producing flattering numbers. {@code ./gradlew verifyFixtures} runs
+ * {@link #main(String[])} to check them all without benchmarking
+ * anything.
+ */
+public class Fixtures implements AutoCloseable {
+    private NativeLibraryExtractor extractor;
+    private Path directory;
+
+    private static final String[] VERIFIED = {"gates.sim", "alu.sim", "cpu.sim"};
+
+    public static void main(String[] args) throws Exception {
+        try (Fixtures fixtures = new Fixtures()) {
+            for (String name : VERIFIED) {
+                fixtures.verify(name);
+                System.out.printf("%s works%n", name);
+            }
+        }
+    }
+
+    public Fixtures() throws IOException {
+        extractor = new NativeLibraryExtractor();
+        extractor.extractNativeLibs();
+        directory = Files.createTempDirectory("circuitsim-tester-jmh");
+    }
+
+    /**
+     * Copies the bundled {@code circuits/<name>} resource to a real file,
+     * since CircuitSim can only load circuits from files, and returns its
+     * path.
+     */
+    public String path(String name) throws IOException {
+        Path file = directory.resolve(name);
+
+        if (!Files.exists(file)) {
+            try (InputStream stream = Fixtures.class.getResourceAsStream("/circuits/" + name)) {
+                if (stream == null) {
+                    throw new IllegalArgumentException("no bundled circuit named " + name);
+                }
+                Files.copy(stream, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        return file.toString();
+    }
+
+    public Subcircuit load(String name, String subcircuitName) throws Exception {
+        return Subcircuit.fromPath(path(name), subcircuitName);
+    }
+
+    /**
+     * Loads a fresh copy of the bundled circuit {@code name} and checks
+     * that its outputs follow its inputs and, for the CPU, that it fetches
+     * and executes instructions as the clock ticks.
+     *
+     * @throws IllegalStateException if the circuit misbehaves
+     */
+    public void verify(String name) throws Exception {
+        switch (name) {
+            case "gates.sim":
+                verifyGates();
+                break;
+            case "alu.sim":
+                verifyAlu();
+                break;
+            case "cpu.sim":
+                verifyCpu();
+                break;
+            default:
+                throw new IllegalArgumentException(
+                    String.format("no check for bundled circuit `%s'", name));
+        }
+    }
+
+    private void verifyGates() throws Exception {
+        try (Subcircuit gates = load("gates.sim", "Gates")) {
+            InputPin a = (InputPin) gates.lookupPin("A", true, 1, false);
+            InputPin b = (InputPin) gates.lookupPin("B", true, 1, false);
+            OutputPin and = (OutputPin) gates.lookupPin("And", false, 1, false);
+            OutputPin or = (OutputPin) gates.lookupPin("Or", false, 1, false);
+            OutputPin xor = (OutputPin) gates.lookupPin("Xor", false, 1, false);
+
+            for (int row = 0; row < 4; row++) {
+                int aValue = row & 1;
+                int bValue = row >> 1;
+                a.set(aValue);
+                b.set(bValue);
+                expect("gates.sim", "And", aValue & bValue, and.get());
+                expect("gates.sim", "Or", aValue | bValue, or.get());
+                expect("gates.sim", "Xor", aValue ^ bValue, xor.get());
+            }
+        }
+    }
+
+    private void verifyAlu() throws Exception {
+        try (Subcircuit alu = load("alu.sim", "ALU")) {
+            InputPin a = (InputPin) alu.lookupPin("A", true, 8, false);
+            InputPin b = (InputPin) alu.lookupPin("B", true, 8, false);
+            InputPin op = (InputPin) alu.lookupPin("Op", true, 2, false);
+            OutputPin out = (OutputPin) alu.lookupPin("Out", false, 8, false);
+
+            int[][] operands = {{0x00, 0x00}, {0x5a, 0x0f}, {0xc3, 0x81}, {0xff, 0x01}};
+            for (int[] operand : operands) {
+                a.set(operand[0]);
+                b.set(operand[1]);
+                int[] expected = {
+                    operand[0] & operand[1],
+                    operand[0] | operand[1],
+                    (operand[0] + operand[1]) & 0xff,
+                    ~operand[0] & 0xff,
+                };
+                for (int opValue = 0; opValue < expected.length; opValue++) {
+                    op.set(opValue);
+                    expect("alu.sim", String.format("Out for Op=%d, A=0x%02x, B=0x%02x",
+                                                    opValue, operand[0], operand[1]),
+                           expected[opValue], out.get());
+                }
+            }
+        }
+    }
+
+    private void verifyCpu() throws Exception {
+        try (Subcircuit cpu = load("cpu.sim", "CPU")) {
+            // Every cycle, the CPU latches prog[PC] into IR, adds the
+            // previous IR to ACC, and increments PC
+            BaseMemory prog = cpu.lookupMemory("prog", 16, false, Subcircuit.MemoryType.ROM);
+            prog.store(0, new int[] {1, 2, 3, 4});
+            Clock clock = (Clock) cpu.mockPulser("CLK", false, Subcircuit.PulserType.CLOCK);
+            OutputPin pc = (OutputPin) cpu.lookupPin("PC", false, 16, false);
+            OutputPin result = (OutputPin) cpu.lookupPin("Result", false, 16, false);
+
+            expect("cpu.sim", "PC before ticking", 0, pc.get());
+            clock.tick();
+            expect("cpu.sim", "PC after 1 tick", 1, pc.get());
+            for (int tick = 2; tick <= 4; tick++) {
+                clock.tick();
+            }
+            expect("cpu.sim", "PC after 4 ticks", 4, pc.get());
+            expect("cpu.sim", "Result after 4 ticks", 1 + 2 + 3, result.get());
+        }
+    }
+
+    private static void expect(String name, String what, int expected, int actual) {
+        if (actual != expected) {
+            throw new IllegalStateException(String.format(
+                "fixture `%s' is broken: expected %s to be %d, but it was %d",
+                name, what, expected, actual));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        } finally {
+            extractor.close();
+        }
+    }
+}
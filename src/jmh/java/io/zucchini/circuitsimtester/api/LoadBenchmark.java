@@ -0,0 +1,61 @@
+package io.zucchini.circuitsimtester.api;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.ra4king.circuitsim.gui.CircuitSim;
+
+/**
+ * Loads each bundled circuit, both from scratch the way CircuitSim does
+ * and through {@link Subcircuit#fromPath(String, String)}, which after
+ * the first load only hashes the file and resets a cached simulation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LoadBenchmark {
+    @Param({"gates.sim:Gates", "alu.sim:ALU", "cpu.sim:CPU"})
+    public String circuit;
+
+    private Fixtures fixtures;
+    private String path;
+    private String subcircuitName;
+
+    @Setup
+    public void setup() throws Exception {
+        String[] parts = circuit.split(":");
+        fixtures = new Fixtures();
+        fixtures.verify(parts[0]);
+        path = fixtures.path(parts[0]);
+        subcircuitName = parts[1];
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        fixtures.close();
+    }
+
+    @Benchmark
+    public CircuitSim loadCircuits() throws Exception {
+        CircuitSim circuitSim = new CircuitSim(false);
+        circuitSim.loadCircuits(new File(path));
+        return circuitSim;
+    }
+
+    @Benchmark
+    public int fromPath() throws Exception {
+        try (Subcircuit subcircuit = Subcircuit.fromPath(path, subcircuitName)) {
+            return subcircuit.getPinCount();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package io.zucchini.circuitsimtester.api;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Finds pins and counts components in the bundled ALU and CPU, which is
+ * what the extension does for every {@code @SubcircuitComponent} field
+ * and {@code @SubcircuitTest(restrictors=...)} before any test runs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LookupBenchmark {
+    private static final List<String> COUNTED = List.of("Memory", "Clock", "Input Pin", "Output Pin");
+
+    private Fixtures fixtures;
+    private Subcircuit alu;
+    private Subcircuit cpu;
+
+    @Setup
+    public void setup() throws Exception {
+        fixtures = new Fixtures();
+        fixtures.verify("alu.sim");
+        fixtures.verify("cpu.sim");
+        alu = fixtures.load("alu.sim", "ALU");
+        cpu = fixtures.load("cpu.sim", "CPU");
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        alu.close();
+        cpu.close();
+        fixtures.close();
+    }
+
+    @Benchmark
+    public BasePin lookupInputPin() {
+        return alu.lookupPin("A", true, 8, false);
+    }
+
+    @Benchmark
+    public BasePin lookupOutputPin() {
+        return alu.lookupPin("Out", false, 8, false);
+    }
+
+    @Benchmark
+    public Map<String, Integer> lookupComponentCounts() {
+        return cpu.lookupComponentCounts(COUNTED, false, true);
+    }
+
+    @Benchmark
+    public Map<String, Integer> lookupComponentCountsInverse() {
+        return cpu.lookupComponentCounts(COUNTED, true, true);
+    }
+}
@@ -0,0 +1,76 @@
+package io.zucchini.circuitsimtester.api;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Fills the 64K-word RAM of the bundled CPU from a CircuitSim {@code .dat}
+ * image, the usual way of loading a program before a processor test.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MemoryBenchmark {
+    private Fixtures fixtures;
+    private Subcircuit cpu;
+    private BaseMemory ram;
+    private byte[] image;
+    private Path imagePath;
+
+    @Setup
+    public void setup() throws Exception {
+        fixtures = new Fixtures();
+        fixtures.verify("cpu.sim");
+        cpu = fixtures.load("cpu.sim", "CPU");
+        ram = cpu.lookupMemory("mem", 16, false, Subcircuit.MemoryType.RAM);
+
+        // Random words with a zeroed stretch in the middle, so both plain
+        // words and run lengths show up
+        Random random = new Random(2110);
+        StringBuilder dat = new StringBuilder();
+        for (int address = 0; address < ram.size(); address++) {
+            if (address == ram.size() / 2) {
+                dat.append(ram.size() / 4).append("-0 ");
+                address += ram.size() / 4 - 1;
+            } else {
+                dat.append(Integer.toHexString(random.nextInt(1 << 16)))
+                   .append((address % 8 == 7)? '\n' : ' ');
+            }
+        }
+        image = dat.toString().getBytes(StandardCharsets.US_ASCII);
+        imagePath = Files.createTempFile("circuitsim-tester-jmh", ".dat");
+        Files.write(imagePath, image);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        Files.delete(imagePath);
+        cpu.close();
+        fixtures.close();
+    }
+
+    @Benchmark
+    public BaseMemory loadStream() {
+        ram.load(new ByteArrayInputStream(image));
+        return ram;
+    }
+
+    @Benchmark
+    public BaseMemory loadPath() throws Exception {
+        ram.load(imagePath, BaseMemory.ImageFormat.HEX);
+        return ram;
+    }
+}
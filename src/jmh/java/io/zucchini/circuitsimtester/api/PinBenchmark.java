@@ -0,0 +1,76 @@
+package io.zucchini.circuitsimtester.api;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Sets input pins and reads an output pin, the inner loop of every
+ * combinational test. Each call to {@link InputPin#set(int)} propagates,
+ * so this measures CircuitSim as much as the tester.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PinBenchmark {
+    private Fixtures fixtures;
+    private Subcircuit gates;
+    private InputPin gatesA;
+    private InputPin gatesB;
+    private OutputPin gatesXor;
+    private Subcircuit alu;
+    private InputPin aluA;
+    private InputPin aluB;
+    private InputPin aluOp;
+    private OutputPin aluOut;
+    private int row;
+
+    @Setup
+    public void setup() throws Exception {
+        fixtures = new Fixtures();
+        fixtures.verify("gates.sim");
+        fixtures.verify("alu.sim");
+
+        gates = fixtures.load("gates.sim", "Gates");
+        gatesA = (InputPin) gates.lookupPin("A", true, 1, false);
+        gatesB = (InputPin) gates.lookupPin("B", true, 1, false);
+        gatesXor = (OutputPin) gates.lookupPin("Xor", false, 1, false);
+
+        alu = fixtures.load("alu.sim", "ALU");
+        aluA = (InputPin) alu.lookupPin("A", true, 8, false);
+        aluB = (InputPin) alu.lookupPin("B", true, 8, false);
+        aluOp = (InputPin) alu.lookupPin("Op", true, 2, false);
+        aluOut = (OutputPin) alu.lookupPin("Out", false, 8, false);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        gates.close();
+        alu.close();
+        fixtures.close();
+    }
+
+    @Benchmark
+    public int gates() {
+        row++;
+        gatesA.set(row & 1);
+        gatesB.set((row >> 1) & 1);
+        return gatesXor.get();
+    }
+
+    @Benchmark
+    public int alu() {
+        row++;
+        aluA.set(row & 0xff);
+        aluB.set((row >> 8) & 0xff);
+        aluOp.set((row >> 16) & 0x3);
+        return aluOut.get();
+    }
+}
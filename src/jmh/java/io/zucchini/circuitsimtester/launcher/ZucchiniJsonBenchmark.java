@@ -0,0 +1,96 @@
+package io.zucchini.circuitsimtester.launcher;
+
+import java.io.StringWriter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.platform.engine.TestExecutionResult;
+import org.junit.platform.engine.UniqueId;
+import org.junit.platform.engine.support.descriptor.ClassSource;
+import org.junit.platform.engine.support.descriptor.EngineDescriptor;
+import org.junit.platform.engine.support.descriptor.MethodSource;
+import org.junit.platform.launcher.TestIdentifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Prints the JSON for a batch of submissions, each with a few parameterized
+ * test methods of a couple hundred cases apiece, some of them failing.
+ * Like the launcher, the results are handed over already summarized by
+ * method, the way {@link TestListener} summarizes them while tests run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ZucchiniJsonBenchmark {
+    private static final int SUBMISSIONS = 50;
+    private static final int METHODS = 8;
+    private static final int CASES = 256;
+    private static final int MAX_FAILURES = 8;
+
+    private ZucchiniJson json;
+    private TestClassResult classResult;
+    private Map<String, TestClassResult> classResults;
+
+    @Setup
+    public void setup() {
+        json = new ZucchiniJson(MAX_FAILURES);
+        classResults = new TreeMap<>();
+
+        for (int i = 0; i < SUBMISSIONS; i++) {
+            classResults.put("submission" + i, makeClassResult("AluTests"));
+        }
+        classResult = classResults.get("submission0");
+    }
+
+    private static TestClassResult makeClassResult(String className) {
+        UniqueId classId = UniqueId.forEngine("junit-jupiter").append("class", className);
+        TestClassResult classResult = new TestClassResult(
+            identifier(classId, className), ClassSource.from(className), TestExecutionResult.successful());
+
+        for (int method = 0; method < METHODS; method++) {
+            String methodName = "test" + method;
+            UniqueId methodId = classId.append("test-template", methodName + "()");
+            TestMethodSummary summary = new TestMethodSummary(methodName, MAX_FAILURES);
+
+            for (int i = 0; i < CASES; i++) {
+                String displayName = String.format("%s [%d] a=%d, b=%d", methodName, i + 1, i, CASES - i);
+                TestExecutionResult result = (i % (method + 2) == 0)
+                    ? TestExecutionResult.failed(new AssertionError(
+                          String.format("expected: <%d> but was: <%d>", i, i + 1)))
+                    : TestExecutionResult.successful();
+                summary.add(new TestMethodResult(
+                    identifier(methodId.append("test-template-invocation", "#" + (i + 1)), displayName),
+                    MethodSource.from(className, methodName), result));
+            }
+
+            classResult.addMethodSummary(summary);
+        }
+
+        return classResult;
+    }
+
+    private static TestIdentifier identifier(UniqueId id, String displayName) {
+        return TestIdentifier.from(new EngineDescriptor(id, displayName));
+    }
+
+    @Benchmark
+    public String printClassResult() {
+        StringWriter out = new StringWriter();
+        json.printResultsAsJson(classResult, out);
+        return out.toString();
+    }
+
+    @Benchmark
+    public String printBatch() {
+        StringWriter out = new StringWriter();
+        json.printResultsAsJson(classResults, out);
+        return out.toString();
+    }
+}
@@ -1,13 +1,48 @@
 package io.zucchini.circuitsimtester.api;
 
+import java.io.IOException;
 import java.io.InputStream;
-import java.util.Scanner;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
 
 /**
  * Base class inherited by {@link Ram} and {@link Rom}. Handles loading {@code
- * .dat}s exported from CircuitSim from an {@link InputStream}.
+ * .dat}s exported from CircuitSim from an {@link InputStream}, as well as
+ * other memory image formats.
  */
 public abstract class BaseMemory {
+    /**
+     * Formats of memory images that {@link #load(Path, ImageFormat)} and
+     * {@link #load(InputStream, ImageFormat)} understand.
+     */
+    public enum ImageFormat {
+        /**
+         * Whitespace-separated hex words, as in the {@code .dat} files
+         * saved by the CircuitSim memory editor, where {@code x-y} means
+         * x (in decimal) copies of the hex word y.
+         */
+        HEX,
+        /**
+         * Logisim {@code v2.0 raw} files: a {@code v2.0 raw} header
+         * followed by whitespace-separated hex words, where {@code x*y}
+         * means x (in decimal) copies of the hex word y. {@code #} starts
+         * a comment.
+         */
+        LOGISIM,
+        /**
+         * Raw binary words, least significant byte first. Each word takes
+         * as many bytes as needed to hold the data bits of the memory.
+         */
+        BINARY_LITTLE_ENDIAN,
+        /**
+         * Raw binary words, most significant byte first. Each word takes
+         * as many bytes as needed to hold the data bits of the memory.
+         */
+        BINARY_BIG_ENDIAN,
+    }
+
     /**
      * Reads a word from this RAM/ROM.
      *
@@ -24,10 +59,304 @@ public abstract class BaseMemory {
      */
     public abstract void store(int address, int value);
 
+    /**
+     * Returns the number of words in this RAM/ROM.
+     *
+     * @return the number of addressable words
+     */
+    public abstract int size();
+
+    /**
+     * Returns the number of bits in each word of this RAM/ROM.
+     */
+    abstract int dataBits();
+
+    /**
+     * Returns the array CircuitSim keeps the contents of this RAM/ROM in,
+     * for reading and writing in bulk, or null if it cannot be reached. If
+     * you write to it, call {@link #contentsChanged()} afterward.
+     */
+    abstract int[] contents();
+
+    /**
+     * Lets CircuitSim know the array returned by {@link #contents()} was
+     * modified behind its back.
+     */
+    abstract void contentsChanged();
+
+    /**
+     * Returns which pages of this RAM/ROM have been written, shared with
+     * every other wrapper of the same CircuitSim component.
+     */
+    abstract DirtyPages dirtyPages();
+
+    private static final int DEFAULT_MAX_REPORTED = 8;
+
+    /**
+     * Copies the contents of this RAM/ROM so that {@link
+     * #restore(MemorySnapshot)} can put them back later, say before every
+     * test after loading a program once. If memory still matches an
+     * earlier snapshot apart from a few pages written since, only those
+     * pages are copied, and the rest are shared with that snapshot.
+     *
+     * @return a snapshot of the contents of memory
+     * @see MemorySnapshot
+     */
+    public MemorySnapshot snapshot() {
+        int size = size();
+        int[] contents = contents();
+        DirtyPages dirtyPages = dirtyPages();
+        MemorySnapshot matched = dirtyPages.getMatched(contents);
+        int[][] pages = new int[(size + MemorySnapshot.PAGE_SIZE - 1) / MemorySnapshot.PAGE_SIZE][];
+
+        for (int page = 0; page < pages.length; page++) {
+            int from = page * MemorySnapshot.PAGE_SIZE;
+            int to = Math.min(size, from + MemorySnapshot.PAGE_SIZE);
+
+            if (matched != null && !dirtyPages.getWritten().get(page)) {
+                // Nobody wrote to this page since, so share it
+                pages[page] = matched.getPages()[page];
+            } else if (contents == null) {
+                pages[page] = new int[to - from];
+                for (int address = from; address < to; address++) {
+                    pages[page][address - from] = load(address);
+                }
+            } else {
+                pages[page] = Arrays.copyOfRange(contents, from, to);
+            }
+        }
+
+        MemorySnapshot snapshot = new MemorySnapshot(size, pages);
+        dirtyPages.matches(snapshot, contents);
+        return snapshot;
+    }
+
+    /**
+     * Puts back the contents of memory captured by {@link #snapshot()}.
+     * Only pages which differ from the snapshot are copied.
+     * <p>
+     * Writes are tracked a page at a time, so when memory last matched
+     * this same snapshot (it was just taken or restored), only the pages
+     * written since are looked at, and restoring costs about as much as
+     * the pages the test touched. Otherwise, such as for a snapshot of
+     * another memory, or after the simulation was reset, every page is
+     * compared.
+     *
+     * @param snapshot a snapshot of this or another memory of the same size
+     * @return the number of pages which had to be copied
+     * @throws IllegalArgumentException if the snapshot is of a memory with
+     *                                  a different size
+     */
+    public int restore(MemorySnapshot snapshot) {
+        int size = size();
+        if (snapshot.size() != size) {
+            throw new IllegalArgumentException(String.format(
+                "cannot restore a snapshot of %d words into a memory of %d words",
+                snapshot.size(), size));
+        }
+
+        int[] contents = contents();
+        DirtyPages dirtyPages = dirtyPages();
+        int[][] pages = snapshot.getPages();
+        int restored = 0;
+
+        if (dirtyPages.getMatched(contents) == snapshot) {
+            BitSet written = dirtyPages.getWritten();
+            for (int page = written.nextSetBit(0); page >= 0; page = written.nextSetBit(page + 1)) {
+                restored += restorePage(contents, page, pages[page])? 1 : 0;
+            }
+        } else {
+            for (int page = 0; page < pages.length; page++) {
+                restored += restorePage(contents, page, pages[page])? 1 : 0;
+            }
+        }
+
+        if (contents != null && restored > 0) {
+            contentsChanged();
+        }
+        dirtyPages.matches(snapshot, contents);
+        return restored;
+    }
+
+    // Returns whether the page had changed. Leaves calling
+    // contentsChanged() to the caller
+    private boolean restorePage(int[] contents, int page, int[] words) {
+        int from = page * MemorySnapshot.PAGE_SIZE;
+
+        if (contents == null) {
+            boolean changed = false;
+            for (int i = 0; i < words.length; i++) {
+                if (load(from + i) != words[i]) {
+                    store(from + i, words[i]);
+                    changed = true;
+                }
+            }
+            return changed;
+        } else if (Arrays.mismatch(contents, from, from + words.length, words, 0, words.length) != -1) {
+            System.arraycopy(words, 0, contents, from, words.length);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Writes consecutive words to this RAM/ROM in one go, which is much
+     * faster than calling {@link #store(int, int)} for each.
+     *
+     * @param address the memory address to store the first word to
+     * @param words the values to store
+     * @throws IllegalArgumentException if the words do not fit in memory
+     *                                  starting at {@code address}
+     */
+    public void store(int address, int[] words) {
+        if (address < 0 || (long) address + words.length > size()) {
+            throw new IllegalArgumentException(String.format(
+                "cannot store %d words at address 0x%x in a memory of %d words",
+                words.length, address, size()));
+        }
+
+        int[] contents = contents();
+        if (contents == null) {
+            for (int i = 0; i < words.length; i++) {
+                store(address + i, words[i]);
+            }
+        } else {
+            System.arraycopy(words, 0, contents, address, words.length);
+            dirtyPages().written(address, address + words.length);
+            contentsChanged();
+        }
+    }
+
+    /**
+     * Reads consecutive words from this RAM/ROM in one go, which is much
+     * faster than calling {@link #load(int)} for each.
+     *
+     * @param from the first memory address to read
+     * @param to the memory address after the last one to read
+     * @return the values at addresses {@code from} through {@code to - 1}
+     * @throws IllegalArgumentException if the range is not within memory
+     */
+    public int[] dump(int from, int to) {
+        checkRange(from, to);
+
+        int[] contents = contents();
+        if (contents != null) {
+            return Arrays.copyOfRange(contents, from, to);
+        }
+
+        int[] words = new int[to - from];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = load(from + i);
+        }
+        return words;
+    }
+
+    /**
+     * Compares memory starting at {@code address} against an expected
+     * image, reporting at most the first 8 ranges of mismatched words.
+     *
+     * @param address the memory address to compare the first word to
+     * @param expected the expected values
+     * @return the ranges of mismatched words
+     * @see #diff(int, int[], int)
+     */
+    public MemoryDiff diff(int address, int[] expected) {
+        return diff(address, expected, DEFAULT_MAX_REPORTED);
+    }
+
+    /**
+     * Compares memory starting at {@code address} against an expected
+     * image. Skips over matching words a page at a time with {@link
+     * Arrays#mismatch(int[], int, int, int[], int, int)} and never copies
+     * more than a page of memory at once, so comparing even large
+     * memories is cheap. Every mismatched word is counted, but only the
+     * first {@code maxReported} ranges are remembered.
+     *
+     * @param address the memory address to compare the first word to
+     * @param expected the expected values
+     * @param maxReported how many ranges of mismatched words to remember
+     * @return the ranges of mismatched words
+     * @throws IllegalArgumentException if the expected image does not fit
+     *                                  in memory starting at {@code
+     *                                  address}
+     */
+    public MemoryDiff diff(int address, int[] expected, int maxReported) {
+        checkRange(address, (long) address + expected.length);
+
+        MemoryDiff diff = new MemoryDiff(maxReported);
+        int[] contents = contents();
+        // Index into expected where the current range of mismatches
+        // started, or -1 if we are not in one
+        int rangeStart = -1;
+        int firstExpected = 0;
+        int firstActual = 0;
+
+        for (int chunk = 0; chunk < expected.length; chunk += MemorySnapshot.PAGE_SIZE) {
+            int chunkEnd = Math.min(expected.length, chunk + MemorySnapshot.PAGE_SIZE);
+            // The word to compare to expected[i] is actual[i + offset]
+            int[] actual;
+            int offset;
+            if (contents != null) {
+                actual = contents;
+                offset = address;
+            } else {
+                actual = dump(address + chunk, address + chunkEnd);
+                offset = -chunk;
+            }
+
+            int i = chunk;
+            while (i < chunkEnd) {
+                if (rangeStart < 0) {
+                    int mismatch = Arrays.mismatch(expected, i, chunkEnd,
+                                                   actual, i + offset, chunkEnd + offset);
+                    if (mismatch < 0) {
+                        break;
+                    }
+                    i += mismatch;
+                    rangeStart = i;
+                    firstExpected = expected[i];
+                    firstActual = actual[i + offset];
+                } else if (expected[i] == actual[i + offset]) {
+                    diff.addRange(address + rangeStart, address + i, firstExpected, firstActual);
+                    rangeStart = -1;
+                }
+                i++;
+            }
+        }
+
+        if (rangeStart >= 0) {
+            diff.addRange(address + rangeStart, address + expected.length, firstExpected, firstActual);
+        }
+        return diff;
+    }
+
+    /**
+     * Compares memory starting at {@code address} against an expected
+     * image and throws if any word differs.
+     *
+     * @param address the memory address to compare the first word to
+     * @param expected the expected values
+     * @throws AssertionError listing the first few ranges of mismatched
+     *                        words
+     * @see #diff(int, int[])
+     */
+    public void assertMatches(int address, int[] expected) {
+        MemoryDiff diff = diff(address, expected);
+        if (!diff.matches()) {
+            throw new AssertionError(diff.toString());
+        }
+    }
+
+    private void checkRange(long from, long to) {
+        if (from < 0 || to < from || to > size()) {
+            throw new IllegalArgumentException(String.format(
+                "addresses 0x%x to 0x%x are not all within a memory of %d words", from, to, size()));
+        }
+    }
+
     // TODO: This method is badly named, so rename it. After all, we are
     //       storing into RAM/ROM, not loading from it.
-    // TODO: Provide some mechanism in CircuitSimExtension to open a file
-    //       and preload it into RAM/ROM
     /**
      * Loads a stream of a dat file into this component's memory. Format
      * is the same as the .dat files saved in the CircuitSim memory
@@ -36,30 +365,61 @@ public abstract class BaseMemory {
      * @param stream the stream of the .dat file to be loaded
      */
     public void load(InputStream stream) {
-        Scanner scanner = new Scanner(stream);
-
-        int address = 0;
-        while (scanner.hasNext()) {
-            String word = scanner.next();
-
-            if (word.contains("-")) {
-                // Roi's world-famous patented run-length encoding
-                // `x-y', where x is the number of occurrences and y is a
-                // hex word
-                String[] pieces = word.split("-");
-                if (pieces.length != 2) {
-                    throw new IllegalArgumentException("invalid run-length encoded word " + word);
-                }
-                int length = Integer.parseInt(pieces[0]);
-                int value = Integer.parseInt(pieces[1], 16);
-
-                for (int i = 0; i < length; i++) {
-                    store(address++, value);
-                }
-            } else {
-                int value = Integer.parseInt(word, 16);
-                store(address++, value);
-            }
+        try {
+            load(stream, ImageFormat.HEX);
+        } catch (IOException err) {
+            throw new UncheckedIOException(err);
         }
     }
+
+    /**
+     * Loads a memory image in the given format from a stream into memory,
+     * starting at address 0.
+     *
+     * @param stream the memory image
+     * @param format the format of the memory image
+     * @throws IOException if reading the stream fails
+     * @throws IllegalArgumentException if the image is malformed or does
+     *                                  not fit in memory
+     */
+    public void load(InputStream stream, ImageFormat format) throws IOException {
+        store(0, MemoryImageParser.parse(stream, format, wordBytes(), size()));
+    }
+
+    /**
+     * Loads a memory image file in the given format into memory, starting
+     * at address 0. The file is memory-mapped rather than read, so this is
+     * the fastest way to load large images.
+     *
+     * @param path the memory image file
+     * @param format the format of the memory image
+     * @throws IOException if reading the file fails
+     * @throws IllegalArgumentException if the image is malformed or does
+     *                                  not fit in memory
+     */
+    public void load(Path path, ImageFormat format) throws IOException {
+        store(0, MemoryImageParser.parse(path, format, wordBytes(), size()));
+    }
+
+    /**
+     * Like {@link #load(Path, ImageFormat)}, but remembers the parsed
+     * image for the rest of the JVM's life, so loading the same unchanged
+     * file again (say, into the memory of the next submission) only
+     * copies it into memory. {@link
+     * io.zucchini.circuitsimtester.extension.CircuitSimExtension} uses this
+     * for {@link SubcircuitComponent#preload()}.
+     *
+     * @param path the memory image file
+     * @param format the format of the memory image
+     * @throws IOException if reading the file fails
+     * @throws IllegalArgumentException if the image is malformed or does
+     *                                  not fit in memory
+     */
+    public void preload(Path path, ImageFormat format) throws IOException {
+        store(0, MemoryImageCache.get(path, format, wordBytes(), size()));
+    }
+
+    private int wordBytes() {
+        return (dataBits() + 7) / 8;
+    }
 }
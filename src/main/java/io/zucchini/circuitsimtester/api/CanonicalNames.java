@@ -0,0 +1,92 @@
+package io.zucchini.circuitsimtester.api;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Normalizes subcircuit names and component labels into lowercase
+ * alphanumeric strings, as described in {@link
+ * Subcircuit#fromPath(String,String)}.
+ * <p>
+ * Equivalent to {@code name.toLowerCase().replaceAll("[^0-9a-z]+", "")},
+ * but without a regex for the common all-ASCII case, and remembering
+ * results since the same labels are normalized over and over.
+ */
+class CanonicalNames {
+    // Forget everything past this point so batch runs over thousands of
+    // submissions don't grow the heap without limit
+    private static final int MAX_REMEMBERED = 1 << 16;
+    private static final Map<String, String> remembered = new ConcurrentHashMap<>();
+
+    static String canonicalName(String name) {
+        String canonical = remembered.get(name);
+
+        if (canonical == null) {
+            canonical = normalize(name);
+
+            if (remembered.size() >= MAX_REMEMBERED) {
+                remembered.clear();
+            }
+            remembered.put(name, canonical);
+        }
+
+        return canonical;
+    }
+
+    /**
+     * Normalizes {@code name} without consulting or updating the
+     * remembered results.
+     */
+    static String normalize(String name) {
+        int length = name.length();
+
+        // Most labels are already canonical, like `a' or `out', so skip
+        // copying them
+        int firstChange = 0;
+        while (firstChange < length && isCanonical(name.charAt(firstChange))) {
+            firstChange++;
+        }
+        if (firstChange == length) {
+            return name;
+        }
+
+        char[] canonical = new char[length];
+        name.getChars(0, firstChange, canonical, 0);
+        int canonicalLength = firstChange;
+
+        for (int i = firstChange; i < length; i++) {
+            char c = name.charAt(i);
+
+            if (c >= 0x80) {
+                // toLowerCase() can turn some non-ASCII characters into
+                // ASCII letters (e.g., the Kelvin sign), so let it handle
+                // the rare exotic label
+                return slowNormalize(name);
+            } else if (c >= 'A' && c <= 'Z') {
+                canonical[canonicalLength++] = (char) (c - 'A' + 'a');
+            } else if (isCanonical(c)) {
+                canonical[canonicalLength++] = c;
+            }
+        }
+
+        return new String(canonical, 0, canonicalLength);
+    }
+
+    private static boolean isCanonical(char c) {
+        return c >= 'a' && c <= 'z' || c >= '0' && c <= '9';
+    }
+
+    private static String slowNormalize(String name) {
+        String lower = name.toLowerCase();
+        StringBuilder canonical = new StringBuilder(lower.length());
+
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            if (isCanonical(c)) {
+                canonical.append(c);
+            }
+        }
+
+        return canonical.toString();
+    }
+}
@@ -0,0 +1,123 @@
+package io.zucchini.circuitsimtester.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.ra4king.circuitsim.gui.CircuitSim;
+
+/**
+ * Keeps recently loaded {@code CircuitSim} instances around, keyed by a
+ * hash of the {@code .sim} file contents, so that many test classes
+ * against the same file parse it only once.
+ * <p>
+ * There may be several cached instances of the same file, such as the
+ * copies loaded by a parallel {@link TruthTable}, but each is handed to at
+ * most one {@link Subcircuit} at a time:
+ * {@link #checkout(File)} removes it from the cache and {@link
+ * #checkin(String, CircuitSim)} puts it back. Callers must only check in
+ * instances they have not rewired (see {@link Subcircuit#close()}), since
+ * resetting the simulation clears simulation state but not changes to the
+ * circuit itself.
+ */
+class CircuitCache {
+    // CircuitSim instances hold the whole GUI-side circuit too, so keep
+    // this small
+    private static final int MAX_CACHED_CIRCUITS = 16;
+
+    // Least recently used file first
+    private static final Map<String, Deque<CircuitSim>> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private static int cachedCount = 0;
+
+    /**
+     * A {@code CircuitSim} instance along with the hash of the file it was
+     * loaded from.
+     */
+    static class Entry {
+        private final String contentHash;
+        private final CircuitSim circuitSim;
+
+        private Entry(String contentHash, CircuitSim circuitSim) {
+            this.contentHash = contentHash;
+            this.circuitSim = circuitSim;
+        }
+
+        String getContentHash() { return contentHash; }
+        CircuitSim getCircuitSim() { return circuitSim; }
+    }
+
+    /**
+     * Returns a {@code CircuitSim} instance simulating {@code circuitFile}
+     * from a fresh state, reusing a cached instance if one with identical
+     * contents is available and otherwise loading the file.
+     */
+    static Entry checkout(File circuitFile) throws Exception {
+        String contentHash = hash(circuitFile);
+        CircuitSim circuitSim;
+
+        synchronized (cache) {
+            Deque<CircuitSim> instances = cache.get(contentHash);
+            circuitSim = (instances == null)? null : instances.poll();
+
+            if (circuitSim != null) {
+                cachedCount--;
+                if (instances.isEmpty()) {
+                    cache.remove(contentHash);
+                }
+            }
+        }
+
+        if (circuitSim != null) {
+            circuitSim.getSimulator().reset();
+        } else {
+            circuitSim = new CircuitSim(false);
+            circuitSim.loadCircuits(circuitFile);
+        }
+
+        return new Entry(contentHash, circuitSim);
+    }
+
+    /**
+     * Makes an unmodified {@code CircuitSim} instance available to future
+     * {@link #checkout(File)} calls.
+     */
+    static void checkin(String contentHash, CircuitSim circuitSim) {
+        synchronized (cache) {
+            cache.computeIfAbsent(contentHash, k -> new ArrayDeque<>()).push(circuitSim);
+            cachedCount++;
+
+            // Evict from the least recently used files first
+            Iterator<Deque<CircuitSim>> eldest = cache.values().iterator();
+            while (cachedCount > MAX_CACHED_CIRCUITS) {
+                Deque<CircuitSim> instances = eldest.next();
+                while (!instances.isEmpty() && cachedCount > MAX_CACHED_CIRCUITS) {
+                    instances.pollLast();
+                    cachedCount--;
+                }
+                if (instances.isEmpty()) {
+                    eldest.remove();
+                }
+            }
+        }
+    }
+
+    private static String hash(File circuitFile) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException err) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(err);
+        }
+
+        return HexFormat.of().formatHex(digest.digest(Files.readAllBytes(circuitFile.toPath())));
+    }
+}
@@ -2,11 +2,19 @@ package io.zucchini.circuitsimtester.api;
 
 import java.util.function.BooleanSupplier;
 
+import com.ra4king.circuitsim.simulator.WireValue;
+
 /**
  * Allows pretending to tick a Clock component placed in a subcircuit.
  * <p>
  * (In reality, this manipulates an InputPin wired to where the clock component was;
  * see {@link MockPulser})
+ * <p>
+ * For long-running circuits like processors, prefer {@link #runCycles(long)}
+ * and {@link #runUntil(OutputPin, int, long)} over {@link #tick()} in a
+ * loop. They only propagate on the rising and falling edges (two
+ * propagations per cycle instead of the three of {@link #pulse()}) and
+ * report how fast the circuit ran, which helps when tuning timeouts.
  */
 public class Clock extends MockPulser {
     public Clock(InputPin mockPin, Subcircuit subcircuit) {
@@ -18,6 +26,7 @@ public class Clock extends MockPulser {
      */
     public void tick() {
         pulse();
+        subcircuit.countCycle();
     }
 
     /**
@@ -44,4 +53,116 @@ public class Clock extends MockPulser {
         }
         return ticks;
     }
+
+    /**
+     * Tick the clock exactly {@code cycles} times.
+     *
+     * @param cycles how many times to tick the clock
+     * @return how many cycles ran and how long they took
+     */
+    public RunStats runCycles(long cycles) {
+        long start = System.nanoTime();
+        startLow();
+
+        for (long cycle = 0; cycle < cycles; cycle++) {
+            cycle();
+        }
+
+        return new RunStats(cycles, System.nanoTime() - start);
+    }
+
+    /**
+     * Tick the clock until {@code pin} holds {@code value}. Checks the pin
+     * before every cycle, so no cycles run if it already holds {@code
+     * value}. Faster than {@link #tickUntil(long, BooleanSupplier)} with a
+     * lambda calling {@link OutputPin#get()}, since it reads the pin
+     * directly and treats floating bits as not matching instead of
+     * throwing.
+     *
+     * @param pin the output pin to watch, e.g. a "halted" signal
+     * @param value the value to wait for. Truncated to the bit size of
+     *              {@code pin}
+     * @param maxCycleCount the number of cycles before timeout (to avoid
+     *                      infinitely spinning)
+     * @return how many cycles ran until {@code pin} held {@code value} and
+     *         how long they took
+     * @throws IllegalStateException if {@code pin} still does not hold
+     *                               {@code value} after {@code
+     *                               maxCycleCount} cycles
+     */
+    public RunStats runUntil(OutputPin pin, int value, long maxCycleCount) {
+        int bits = pin.getPin().getBitSize();
+        int want = (bits >= 32)? value : value & ((1 << bits) - 1);
+        long start = System.nanoTime();
+        long cycles = 0;
+        startLow();
+
+        while (!holds(pin.getWireValue(), want)) {
+            if (cycles >= maxCycleCount) {
+                throw new IllegalStateException(
+                    "Ticked clock " + maxCycleCount + " times without finishing. " +
+                    "Please check for errors in your logic");
+            }
+            cycle();
+            cycles++;
+        }
+
+        return new RunStats(cycles, System.nanoTime() - start);
+    }
+
+    private static boolean holds(WireValue wireValue, int want) {
+        return wireValue.isValidValue() && wireValue.getValue() == want;
+    }
+
+    // pulse() sets the clock low before every rising edge, which is
+    // redundant everywhere except the first cycle, since the clock always
+    // ends a cycle low
+    private void startLow() {
+        mockPin.set(0b0);
+    }
+
+    private void cycle() {
+        mockPin.write(0b1);
+        subcircuit.propagate();
+        mockPin.write(0b0);
+        subcircuit.propagate();
+        subcircuit.countCycle();
+    }
+
+    /**
+     * How many cycles {@link #runCycles(long)} or {@link
+     * #runUntil(OutputPin, int, long)} ran, and how long they took.
+     */
+    public static class RunStats {
+        private long cycles;
+        private long nanos;
+
+        private RunStats(long cycles, long nanos) {
+            this.cycles = cycles;
+            this.nanos = nanos;
+        }
+
+        /**
+         * @return the number of clock cycles run
+         */
+        public long getCycles() { return cycles; }
+
+        /**
+         * @return the wall-clock time taken, in nanoseconds
+         */
+        public long getNanos() { return nanos; }
+
+        /**
+         * @return how many cycles ran per second of wall-clock time
+         */
+        public double getCyclesPerSecond() {
+            return (nanos == 0)? 0 : cycles * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d cycles in %.3f ms (%.0f cycles/sec)",
+                                 cycles, nanos / 1e6, getCyclesPerSecond());
+        }
+    }
 }
@@ -0,0 +1,492 @@
+package io.zucchini.circuitsimtester.api;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.ra4king.circuitsim.gui.ComponentPeer;
+import com.ra4king.circuitsim.gui.peers.wiring.ConstantPeer;
+import com.ra4king.circuitsim.simulator.CircuitState;
+import com.ra4king.circuitsim.simulator.Component;
+import com.ra4king.circuitsim.simulator.Port;
+import com.ra4king.circuitsim.simulator.WireValue;
+import com.ra4king.circuitsim.simulator.components.gates.AndGate;
+import com.ra4king.circuitsim.simulator.components.gates.Gate;
+import com.ra4king.circuitsim.simulator.components.gates.NandGate;
+import com.ra4king.circuitsim.simulator.components.gates.NorGate;
+import com.ra4king.circuitsim.simulator.components.gates.NotGate;
+import com.ra4king.circuitsim.simulator.components.gates.OrGate;
+import com.ra4king.circuitsim.simulator.components.gates.XnorGate;
+import com.ra4king.circuitsim.simulator.components.gates.XorGate;
+import com.ra4king.circuitsim.simulator.components.plexers.Multiplexer;
+import com.ra4king.circuitsim.simulator.components.wiring.Pin;
+
+/**
+ * A combinational subcircuit compiled into a flat list of bitwise
+ * operations on {@code long}s, sorted so that every operation runs after
+ * the operations driving its inputs. Evaluating one input vector is then a
+ * single pass over that list instead of a round of CircuitSim's
+ * event-driven simulation.
+ * <p>
+ * Only gates, NOT gates, multiplexers, constants and pins are supported,
+ * all directly inside the subcircuit. Anything else (subcircuits,
+ * tunnels, splitters, memory, a combinational loop, a floating or
+ * multiply-driven wire) makes {@link #compile} give up and return null so
+ * callers can fall back to the simulator. It also does not model floating
+ * values at all, so callers should check it agrees with CircuitSim on a
+ * few vectors before trusting it.
+ * <p>
+ * When every net is 1 bit wide, {@link #evaluateSliced} can also evaluate
+ * 64 input vectors at once, one per bit (or "lane") of each {@code long}.
+ */
+class CompiledCircuit {
+    private enum Kind { AND, OR, XOR, NAND, NOR, XNOR, NOT, MUX }
+
+    private final Operation[] operations;
+    // Values of every net, with constants already filled in
+    private final long[] values;
+    // Same, but with every lane of a constant filled in. null unless every
+    // net is 1 bit wide
+    private final long[] lanes;
+    private final int[] inputNets;
+    private final long[] inputMasks;
+    private final int[] outputNets;
+
+    private CompiledCircuit(Operation[] operations, long[] values, long[] lanes,
+                            int[] inputNets, long[] inputMasks, int[] outputNets) {
+        this.operations = operations;
+        this.values = values;
+        this.lanes = lanes;
+        this.inputNets = inputNets;
+        this.inputMasks = inputMasks;
+        this.outputNets = outputNets;
+    }
+
+    /**
+     * Compiles the subcircuit containing {@code inputs} and {@code outputs}.
+     * Input pins not in {@code inputs} are treated as constants holding
+     * their current value.
+     *
+     * @return the compiled circuit, or null if the subcircuit contains
+     *         anything this class cannot compile
+     */
+    static CompiledCircuit compile(List<InputPin> inputs, List<OutputPin> outputs) {
+        Subcircuit subcircuit = inputs.get(0).getSubcircuit();
+        CircuitState state = subcircuit.getCircuitState();
+
+        for (BasePin pin : concat(inputs, outputs)) {
+            if (pin.getSubcircuit().getCircuitState() != state) {
+                return null;
+            }
+        }
+
+        // Constants are anonymous components in CircuitSim, so the only way
+        // to spot them is through their peers
+        Set<Component> constants = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (ComponentPeer<?> peer : subcircuit.getCircuitBoard().getComponents()) {
+            if (peer instanceof ConstantPeer) {
+                constants.add(peer.getComponent());
+            }
+        }
+
+        Set<Pin> inputPins = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (InputPin pin : inputs) {
+            inputPins.add(pin.getPin());
+        }
+
+        Netlist netlist = new Netlist();
+        for (Component component : subcircuit.getCircuit().getComponents()) {
+            if (!netlist.add(component, state, constants, inputPins)) {
+                return null;
+            }
+        }
+
+        int[] inputNets = new int[inputs.size()];
+        long[] inputMasks = new long[inputs.size()];
+        for (int i = 0; i < inputs.size(); i++) {
+            Port port = inputs.get(i).getPin().getPort(Pin.PORT);
+            inputNets[i] = netlist.net(port);
+            inputMasks[i] = mask(port);
+        }
+
+        int[] outputNets = new int[outputs.size()];
+        for (int i = 0; i < outputs.size(); i++) {
+            outputNets[i] = netlist.net(outputs.get(i).getPin().getPort(Pin.PORT));
+            netlist.read.add(outputNets[i]);
+        }
+
+        Operation[] operations = netlist.levelize();
+        if (operations == null) {
+            return null;
+        }
+
+        long[] values = netlist.initialValues();
+        long[] lanes = null;
+        if (netlist.allOneBit) {
+            lanes = new long[values.length];
+            for (int i = 0; i < values.length; i++) {
+                lanes[i] = -values[i];
+            }
+        }
+
+        return new CompiledCircuit(operations, values, lanes, inputNets, inputMasks,
+                                   outputNets);
+    }
+
+    /**
+     * Computes the outputs for one input vector.
+     *
+     * @param inputValues the value of each input, in the order given to
+     *                    {@link #compile}
+     * @param outputValues where to write the value of each output, in the
+     *                     order given to {@link #compile}
+     */
+    void evaluate(int[] inputValues, int[] outputValues) {
+        long[] values = this.values;
+
+        for (int i = 0; i < inputNets.length; i++) {
+            values[inputNets[i]] = inputValues[i] & inputMasks[i];
+        }
+
+        for (Operation operation : operations) {
+            values[operation.out] = operation.evaluate(values);
+        }
+
+        for (int i = 0; i < outputNets.length; i++) {
+            outputValues[i] = (int) values[outputNets[i]];
+        }
+    }
+
+    /**
+     * Returns true if every net is 1 bit wide, so {@link #evaluateSliced}
+     * works.
+     */
+    boolean isBitSliceable() {
+        return lanes != null;
+    }
+
+    /**
+     * Computes the outputs for 64 input vectors at once. Bit {@code k} of
+     * each {@code long} holds the value for vector {@code k}.
+     *
+     * @param inputLanes the lanes of each input, in the order given to
+     *                   {@link #compile}
+     * @param outputLanes where to write the lanes of each output, in the
+     *                    order given to {@link #compile}
+     * @throws IllegalStateException if the circuit is not {@link
+     *                               #isBitSliceable() bit-sliceable}
+     */
+    void evaluateSliced(long[] inputLanes, long[] outputLanes) {
+        if (lanes == null) {
+            throw new IllegalStateException("circuit has nets wider than 1 bit");
+        }
+
+        long[] lanes = this.lanes;
+
+        for (int i = 0; i < inputNets.length; i++) {
+            lanes[inputNets[i]] = inputLanes[i];
+        }
+
+        for (Operation operation : operations) {
+            lanes[operation.out] = operation.evaluateSliced(lanes);
+        }
+
+        for (int i = 0; i < outputNets.length; i++) {
+            outputLanes[i] = lanes[outputNets[i]];
+        }
+    }
+
+    private static long mask(Port port) {
+        int bits = port.getLink().getBitSize();
+        return (bits >= 64)? -1L : (1L << bits) - 1;
+    }
+
+    private static List<BasePin> concat(List<InputPin> inputs, List<OutputPin> outputs) {
+        List<BasePin> pins = new ArrayList<>(inputs);
+        pins.addAll(outputs);
+        return pins;
+    }
+
+    /**
+     * One bitwise operation. For multiplexers, {@code in[0]} is the select
+     * net and the rest are the data nets; otherwise every input net is
+     * combined, after XORing it with its entry in {@code invert} to
+     * implement negated inputs.
+     */
+    private static class Operation {
+        private final Kind kind;
+        private final int[] in;
+        private final long[] invert;
+        private final int out;
+        private final long mask;
+
+        private Operation(Kind kind, int[] in, long[] invert, int out, long mask) {
+            this.kind = kind;
+            this.in = in;
+            this.invert = invert;
+            this.out = out;
+            this.mask = mask;
+        }
+
+        private long evaluate(long[] values) {
+            switch (kind) {
+                case NOT:
+                    return ~values[in[0]] & mask;
+                case MUX:
+                    return values[in[1 + (int) values[in[0]]]];
+                default:
+                    break;
+            }
+
+            long result = values[in[0]] ^ invert[0];
+            for (int i = 1; i < in.length; i++) {
+                long value = values[in[i]] ^ invert[i];
+                switch (kind) {
+                    case AND: case NAND: result &= value; break;
+                    case OR:  case NOR:  result |= value; break;
+                    default:             result ^= value; break;
+                }
+            }
+
+            switch (kind) {
+                case NAND: case NOR: case XNOR:
+                    return ~result & mask;
+                default:
+                    return result;
+            }
+        }
+
+        // Like evaluate(), but for 64 lanes of 1-bit values, where every
+        // mask and invert entry is 0 or 1 and so negating one yields 0 or
+        // all lanes
+        private long evaluateSliced(long[] lanes) {
+            switch (kind) {
+                case NOT:
+                    return ~lanes[in[0]];
+                case MUX:
+                    long sel = lanes[in[0]];
+                    return (lanes[in[1]] & ~sel) | (lanes[in[2]] & sel);
+                default:
+                    break;
+            }
+
+            long result = lanes[in[0]] ^ -invert[0];
+            for (int i = 1; i < in.length; i++) {
+                long value = lanes[in[i]] ^ -invert[i];
+                switch (kind) {
+                    case AND: case NAND: result &= value; break;
+                    case OR:  case NOR:  result |= value; break;
+                    default:             result ^= value; break;
+                }
+            }
+
+            switch (kind) {
+                case NAND: case NOR: case XNOR:
+                    return ~result;
+                default:
+                    return result;
+            }
+        }
+    }
+
+    /**
+     * Collects nets (one per {@code Port.Link}) and the operations driving
+     * them while walking the components of a circuit.
+     */
+    private static class Netlist {
+        private final Map<Port.Link, Integer> nets;
+        private final List<Long> initialValues;
+        // Only nets driven by an operation. Nets driven by a pin or constant
+        // are in driven but not here
+        private final Map<Integer, Operation> drivers;
+        private final Set<Integer> driven;
+        private final List<Operation> operations;
+        private final Set<Integer> read;
+        private boolean allOneBit;
+
+        private Netlist() {
+            this.nets = new HashMap<>();
+            this.initialValues = new ArrayList<>();
+            this.drivers = new HashMap<>();
+            this.driven = new HashSet<>();
+            this.operations = new ArrayList<>();
+            this.read = new HashSet<>();
+            this.allOneBit = true;
+        }
+
+        private int net(Port port) {
+            return nets.computeIfAbsent(port.getLink(), link -> {
+                allOneBit &= link.getBitSize() == 1;
+                initialValues.add(0L);
+                return initialValues.size() - 1;
+            });
+        }
+
+        // Returns false if a net ends up with two drivers
+        private boolean drive(Port port) {
+            return driven.add(net(port));
+        }
+
+        private boolean add(Component component, CircuitState state,
+                            Set<Component> constants, Set<Pin> inputPins) {
+            if (component.getNumPorts() == 0) {
+                // Text and such
+                return true;
+            }
+
+            if (component instanceof Pin) {
+                Pin pin = (Pin) component;
+                Port port = pin.getPort(Pin.PORT);
+                if (!pin.isInput()) {
+                    return true;
+                } else if (inputPins.contains(pin)) {
+                    return drive(port);
+                } else {
+                    return addConstant(port, state) && drive(port);
+                }
+            }
+
+            if (constants.contains(component)) {
+                Port port = component.getPort(0);
+                return addConstant(port, state) && drive(port);
+            }
+
+            Operation operation;
+            if (component instanceof NotGate) {
+                operation = new Operation(Kind.NOT, new int[] {net(component.getPort(0))}, null,
+                                          net(component.getPort(1)), mask(component.getPort(1)));
+            } else if (component instanceof Gate) {
+                operation = gate((Gate) component);
+            } else if (component instanceof Multiplexer) {
+                operation = multiplexer(component);
+            } else {
+                return false;
+            }
+
+            if (operation == null || !driven.add(operation.out)) {
+                return false;
+            }
+            drivers.put(operation.out, operation);
+            operations.add(operation);
+            for (int in : operation.in) {
+                read.add(in);
+            }
+            return true;
+        }
+
+        private boolean addConstant(Port port, CircuitState state) {
+            WireValue value = state.getLastPushed(port);
+            if (value == null || !value.isValidValue()) {
+                return false;
+            }
+            initialValues.set(net(port), value.getValue() & mask(port));
+            return true;
+        }
+
+        private Operation gate(Gate gate) {
+            Kind kind;
+            if (gate instanceof AndGate) {
+                kind = Kind.AND;
+            } else if (gate instanceof NandGate) {
+                kind = Kind.NAND;
+            } else if (gate instanceof OrGate) {
+                kind = Kind.OR;
+            } else if (gate instanceof NorGate) {
+                kind = Kind.NOR;
+            } else if (gate instanceof XorGate) {
+                kind = Kind.XOR;
+            } else if (gate instanceof XnorGate) {
+                kind = Kind.XNOR;
+            } else {
+                return null;
+            }
+
+            int numInputs = gate.getNumPorts() - 1;
+            Port outPort = gate.getPort(numInputs);
+            long mask = mask(outPort);
+            boolean[] negateInputs = gate.getNegateInputs();
+            int[] in = new int[numInputs];
+            long[] invert = new long[numInputs];
+            for (int i = 0; i < numInputs; i++) {
+                in[i] = net(gate.getPort(i));
+                invert[i] = (negateInputs != null && negateInputs[i])? mask : 0;
+            }
+
+            return new Operation(kind, in, invert, net(outPort), mask);
+        }
+
+        private Operation multiplexer(Component mux) {
+            // Data inputs, then the select input, then the output
+            int numData = mux.getNumPorts() - 2;
+            Port selPort = mux.getPort(numData);
+            Port outPort = mux.getPort(numData + 1);
+            if (numData != 1 << selPort.getLink().getBitSize()) {
+                return null;
+            }
+
+            int[] in = new int[1 + numData];
+            in[0] = net(selPort);
+            for (int i = 0; i < numData; i++) {
+                in[1 + i] = net(mux.getPort(i));
+            }
+
+            return new Operation(Kind.MUX, in, null, net(outPort), mask(outPort));
+        }
+
+        // Sorts operations so each runs after its drivers, or returns null if
+        // a net is read but nothing drives it or the operations form a loop
+        private Operation[] levelize() {
+            for (int net : read) {
+                if (!driven.contains(net)) {
+                    return null;
+                }
+            }
+
+            Map<Integer, List<Operation>> readers = new HashMap<>();
+            Map<Operation, Integer> pending = new IdentityHashMap<>();
+            Deque<Operation> ready = new ArrayDeque<>();
+            for (Operation operation : operations) {
+                int waitingOn = 0;
+                for (int in : operation.in) {
+                    if (drivers.containsKey(in)) {
+                        readers.computeIfAbsent(in, k -> new ArrayList<>()).add(operation);
+                        waitingOn++;
+                    }
+                }
+                pending.put(operation, waitingOn);
+                if (waitingOn == 0) {
+                    ready.add(operation);
+                }
+            }
+
+            Operation[] sorted = new Operation[operations.size()];
+            int count = 0;
+            while (!ready.isEmpty()) {
+                Operation operation = ready.poll();
+                sorted[count++] = operation;
+                for (Operation reader : readers.getOrDefault(operation.out, Collections.emptyList())) {
+                    if (pending.merge(reader, -1, Integer::sum) == 0) {
+                        ready.add(reader);
+                    }
+                }
+            }
+
+            return (count == sorted.length)? sorted : null;
+        }
+
+        private long[] initialValues() {
+            long[] values = new long[initialValues.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = initialValues.get(i);
+            }
+            return values;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package io.zucchini.circuitsimtester.api;
+
+import java.util.BitSet;
+
+/**
+ * Remembers which pages of a RAM or ROM have been written since its
+ * contents last matched a {@link MemorySnapshot}, so that {@link
+ * BaseMemory#restore(MemorySnapshot)} only needs to visit those pages.
+ * {@link Subcircuit} keeps one per CircuitSim component, shared by every
+ * {@link Ram} or {@link Rom} wrapping it, so writes through any of them
+ * count, and hooks it up to hear about RAM writes by the simulation too.
+ */
+class DirtyPages {
+    private BitSet written;
+    // The snapshot memory matched, apart from the written pages, and the
+    // array CircuitSim kept memory in at the time. null when we do not know
+    private MemorySnapshot matched;
+    private int[] matchedContents;
+
+    DirtyPages() {
+        this.written = new BitSet();
+    }
+
+    void written(int address) {
+        written.set(address / MemorySnapshot.PAGE_SIZE);
+    }
+
+    void written(int from, int to) {
+        if (from < to) {
+            written.set(from / MemorySnapshot.PAGE_SIZE, (to - 1) / MemorySnapshot.PAGE_SIZE + 1);
+        }
+    }
+
+    /**
+     * Returns the snapshot memory matched before the pages in {@link
+     * #getWritten()} were written, or null if we lost track.
+     *
+     * @param contents the array CircuitSim keeps memory in now, or null.
+     *                 If CircuitSim has swapped it for another one (say,
+     *                 when resetting the simulation), we lost track
+     */
+    MemorySnapshot getMatched(int[] contents) {
+        return (contents == matchedContents)? matched : null;
+    }
+
+    BitSet getWritten() {
+        return written;
+    }
+
+    /**
+     * Starts tracking writes afresh now that memory matches {@code
+     * snapshot} exactly.
+     */
+    void matches(MemorySnapshot snapshot, int[] contents) {
+        matched = snapshot;
+        matchedContents = contents;
+        written.clear();
+    }
+
+    /**
+     * Gives up on tracking until the next {@link #matches(MemorySnapshot,
+     * int[])}, after memory changed in a way we could not follow.
+     */
+    void forget() {
+        matched = null;
+        matchedContents = null;
+    }
+}
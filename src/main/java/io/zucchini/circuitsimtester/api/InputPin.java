@@ -27,7 +27,18 @@ public class InputPin extends BasePin {
      * @param value what to set the pin to. Negative numbers are fine.
      */
     public void set(int value) {
+        write(value);
+        subcircuit.propagate();
+    }
+
+    /**
+     * Sets the value of this input pin <b>without</b> letting the change
+     * propagate, so that several pins can be set before propagating once.
+     *
+     * @param value what to set the pin to. Negative numbers are fine.
+     * @see   Subcircuit#apply(java.util.Map)
+     */
+    void write(int value) {
         pin.setValue(subcircuit.getCircuitState(), WireValue.of(value, pin.getBitSize()));
-        subcircuit.getSimulator().stepAll();
     }
 }
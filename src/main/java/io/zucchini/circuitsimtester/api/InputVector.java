@@ -0,0 +1,55 @@
+package io.zucchini.circuitsimtester.api;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A set of values for input pins which are all applied at once, letting
+ * the circuit propagate only one time. Example:
+ * <pre>
+ * new InputVector().set(a, 0b1011)
+ *                  .set(b, 0b0010)
+ *                  .set(sel, 0b00)
+ *                  .apply();
+ * assertEquals(0b1001, out.get(), "out");
+ * </pre>
+ * An {@code InputVector} can be changed and applied again as many times as
+ * you like.
+ *
+ * @see Subcircuit#apply(Map)
+ */
+public class InputVector {
+    private Map<InputPin, Integer> values;
+
+    /**
+     * Creates an empty {@code InputVector}.
+     */
+    public InputVector() {
+        this.values = new LinkedHashMap<>();
+    }
+
+    /**
+     * Sets the value to which {@code pin} will be set by {@link #apply()},
+     * replacing any value set before.
+     *
+     * @param pin the input pin to set
+     * @param value what to set the pin to. Negative numbers are fine.
+     * @return this {@code InputVector}, for chaining
+     */
+    public InputVector set(InputPin pin, int value) {
+        values.put(pin, value);
+        return this;
+    }
+
+    /**
+     * Sets every input pin to its value and then lets the changes propagate
+     * through the circuit once. Does nothing if no pins have been set.
+     *
+     * @see Subcircuit#apply(Map)
+     */
+    public void apply() {
+        if (!values.isEmpty()) {
+            values.keySet().iterator().next().getSubcircuit().apply(values);
+        }
+    }
+}
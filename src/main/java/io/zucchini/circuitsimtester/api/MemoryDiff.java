@@ -0,0 +1,112 @@
+package io.zucchini.circuitsimtester.api;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The differences between the contents of a {@link Ram} or {@link Rom}
+ * and an expected image, found by {@link BaseMemory#diff(int, int[])}.
+ * Consecutive mismatched words are grouped into ranges, and only the
+ * first few ranges are kept, so comparing a 64K-word memory that is
+ * completely wrong still produces a short message.
+ */
+public class MemoryDiff {
+    private final int maxReported;
+    private final List<Range> ranges;
+    private long rangeCount;
+    private long mismatchCount;
+
+    MemoryDiff(int maxReported) {
+        this.maxReported = maxReported;
+        this.ranges = new ArrayList<>();
+    }
+
+    void addRange(int start, int end, int firstExpected, int firstActual) {
+        if (ranges.size() < maxReported) {
+            ranges.add(new Range(start, end, firstExpected, firstActual));
+        }
+        rangeCount++;
+        mismatchCount += end - start;
+    }
+
+    /**
+     * @return true if memory matched the expected image exactly
+     */
+    public boolean matches() { return mismatchCount == 0; }
+
+    /**
+     * @return the number of words which did not match
+     */
+    public long getMismatchCount() { return mismatchCount; }
+
+    /**
+     * @return the number of ranges of consecutive mismatched words
+     */
+    public long getRangeCount() { return rangeCount; }
+
+    /**
+     * @return the first ranges of mismatched words, in address order
+     */
+    public List<Range> getRanges() { return Collections.unmodifiableList(ranges); }
+
+    @Override
+    public String toString() {
+        if (matches()) {
+            return "memory matches";
+        }
+
+        StringBuilder message = new StringBuilder(String.format(
+            "%d words in %d ranges of memory do not match. ", mismatchCount, rangeCount));
+        message.append(rangeCount > ranges.size()? "First " + ranges.size() + ":" : "All of them:");
+        for (Range range : ranges) {
+            message.append("\n  ").append(range);
+        }
+        return message.toString();
+    }
+
+    /**
+     * A range of consecutive addresses where memory did not match.
+     */
+    public static class Range {
+        private final int start;
+        private final int end;
+        private final int firstExpected;
+        private final int firstActual;
+
+        private Range(int start, int end, int firstExpected, int firstActual) {
+            this.start = start;
+            this.end = end;
+            this.firstExpected = firstExpected;
+            this.firstActual = firstActual;
+        }
+
+        /**
+         * @return the first mismatched address
+         */
+        public int getStart() { return start; }
+
+        /**
+         * @return the address after the last mismatched address
+         */
+        public int getEnd() { return end; }
+
+        /**
+         * @return the expected value at {@link #getStart()}
+         */
+        public int getFirstExpected() { return firstExpected; }
+
+        /**
+         * @return the actual value at {@link #getStart()}
+         */
+        public int getFirstActual() { return firstActual; }
+
+        @Override
+        public String toString() {
+            String where = (end - start == 1)? String.format("0x%04x", start)
+                                             : String.format("0x%04x-0x%04x", start, end - 1);
+            return String.format("%s: expected 0x%x, got 0x%x%s", where, firstExpected, firstActual,
+                                 (end - start == 1)? "" : " (first word)");
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package io.zucchini.circuitsimtester.api;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.zucchini.circuitsimtester.api.BaseMemory.ImageFormat;
+
+/**
+ * Remembers parsed memory images across the whole JVM, so that grading
+ * hundreds of submissions against the same program image in one batch
+ * parses it once. Entries are keyed by path and checked against the
+ * modification time and size of the file, so editing an image between
+ * runs still works.
+ * <p>
+ * The cached arrays are shared, so callers must not modify them.
+ */
+class MemoryImageCache {
+    // Forget everything past this point so batch runs over many different
+    // images don't grow the heap without limit
+    private static final int MAX_CACHED_IMAGES = 64;
+    private static final Map<Key, Image> images = new ConcurrentHashMap<>();
+
+    /**
+     * Parses the image at {@code path}, or returns the array parsed last
+     * time if the file has not changed since.
+     *
+     * @see MemoryImageParser#parse(Path, ImageFormat, int, int)
+     */
+    static int[] get(Path path, ImageFormat format, int wordBytes, int maxWords) throws IOException {
+        Key key = new Key(path.toAbsolutePath().normalize(), format, wordBytes, maxWords);
+        BasicFileAttributes attributes = Files.readAttributes(key.path, BasicFileAttributes.class);
+        long modified = attributes.lastModifiedTime().toMillis();
+        long size = attributes.size();
+
+        Image image = images.get(key);
+        if (image == null || image.modified != modified || image.size != size) {
+            image = new Image(modified, size, MemoryImageParser.parse(key.path, format, wordBytes, maxWords));
+
+            if (images.size() >= MAX_CACHED_IMAGES) {
+                images.clear();
+            }
+            images.put(key, image);
+        }
+
+        return image.words;
+    }
+
+    private static class Key {
+        private final Path path;
+        private final ImageFormat format;
+        private final int wordBytes;
+        private final int maxWords;
+
+        private Key(Path path, ImageFormat format, int wordBytes, int maxWords) {
+            this.path = path;
+            this.format = format;
+            this.wordBytes = wordBytes;
+            this.maxWords = maxWords;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key that = (Key) o;
+            return path.equals(that.path) && format == that.format &&
+                   wordBytes == that.wordBytes && maxWords == that.maxWords;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, format, wordBytes, maxWords);
+        }
+    }
+
+    private static class Image {
+        private final long modified;
+        private final long size;
+        private final int[] words;
+
+        private Image(long modified, long size, int[] words) {
+            this.modified = modified;
+            this.size = size;
+            this.words = words;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package io.zucchini.circuitsimtester.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import io.zucchini.circuitsimtester.api.BaseMemory.ImageFormat;
+
+/**
+ * Parses memory images straight from bytes into an {@code int[]}, without
+ * a {@code Scanner}, a {@code String} per word, or {@code
+ * Integer.parseInt()}. Files are memory-mapped rather than read.
+ */
+class MemoryImageParser {
+    private static final byte[] LOGISIM_HEADER = "v2.0 raw".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Parses the memory image at {@code path}.
+     *
+     * @param wordBytes bytes per word, only used for binary formats
+     * @param maxWords the most words the image may hold, so that a typo
+     *                 in a run length cannot allocate gigabytes
+     */
+    static int[] parse(Path path, ImageFormat format, int wordBytes, int maxWords) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return parse(bytes, format, wordBytes, maxWords);
+        }
+    }
+
+    /**
+     * Parses the memory image in {@code stream}.
+     *
+     * @see #parse(Path, ImageFormat, int, int)
+     */
+    static int[] parse(InputStream stream, ImageFormat format, int wordBytes, int maxWords) throws IOException {
+        return parse(ByteBuffer.wrap(stream.readAllBytes()), format, wordBytes, maxWords);
+    }
+
+    static int[] parse(ByteBuffer bytes, ImageFormat format, int wordBytes, int maxWords) {
+        switch (format) {
+            case HEX:
+                return parseText(bytes, (byte) '-', maxWords);
+            case LOGISIM:
+                skipLogisimHeader(bytes);
+                return parseText(bytes, (byte) '*', maxWords);
+            case BINARY_LITTLE_ENDIAN:
+                return parseBinary(bytes, wordBytes, true, maxWords);
+            case BINARY_BIG_ENDIAN:
+                return parseBinary(bytes, wordBytes, false, maxWords);
+            default:
+                throw new IllegalArgumentException("unknown memory image format " + format.name());
+        }
+    }
+
+    private static void skipLogisimHeader(ByteBuffer bytes) {
+        skipWhitespaceAndComments(bytes);
+        for (byte expected : LOGISIM_HEADER) {
+            if (!bytes.hasRemaining() || bytes.get() != expected) {
+                throw new IllegalArgumentException("memory image does not start with `v2.0 raw'");
+            }
+        }
+    }
+
+    /**
+     * Parses whitespace-separated hex words, where {@code x<separator>y}
+     * means x (in decimal) copies of the hex word y. With {@code -} as the
+     * separator this is the format of the {@code .dat} files saved by
+     * CircuitSim; with {@code *}, Logisim {@code v2.0 raw} files (which
+     * may also have {@code #} comments).
+     */
+    private static int[] parseText(ByteBuffer bytes, byte separator, int maxWords) {
+        Words words = new Words(maxWords);
+
+        while (true) {
+            skipWhitespaceAndComments(bytes);
+            if (!bytes.hasRemaining()) {
+                break;
+            }
+
+            int start = bytes.position();
+            long count = 1;
+            long value = 0;
+            int digits = 0;
+            boolean decimal = true;
+            boolean sawSeparator = false;
+
+            while (bytes.hasRemaining() && !isDelimiter(bytes.get(bytes.position()))) {
+                byte b = bytes.get();
+                int digit = Character.digit(b, 16);
+
+                if (b == separator && digits > 0 && decimal && !sawSeparator) {
+                    // What we thought was a hex word was actually the
+                    // (decimal) count
+                    count = parseDecimal(bytes, start, bytes.position() - 1);
+                    sawSeparator = true;
+                    value = 0;
+                    digits = 0;
+                } else if (digit < 0) {
+                    throw invalidWord(bytes, start);
+                } else {
+                    decimal &= digit < 10;
+                    value = (value << 4) | digit;
+                    digits++;
+                }
+            }
+
+            if (digits == 0 || digits > 8) {
+                throw invalidWord(bytes, start);
+            }
+            words.add((int) value, count);
+        }
+
+        return words.toArray();
+    }
+
+    private static long parseDecimal(ByteBuffer bytes, int from, int to) {
+        long count = 0;
+        for (int i = from; i < to; i++) {
+            count = count * 10 + (bytes.get(i) - '0');
+            if (count > Integer.MAX_VALUE) {
+                throw invalidWord(bytes, from);
+            }
+        }
+        return count;
+    }
+
+    private static int[] parseBinary(ByteBuffer bytes, int wordBytes, boolean littleEndian, int maxWords) {
+        if (wordBytes < 1 || wordBytes > 4) {
+            throw new IllegalArgumentException("words must be 1 to 4 bytes long, not " + wordBytes);
+        }
+        if (bytes.remaining() % wordBytes != 0) {
+            throw new IllegalArgumentException(String.format(
+                "binary memory image is %d bytes long, which is not a multiple of the word size (%d bytes)",
+                bytes.remaining(), wordBytes));
+        }
+
+        Words words = new Words(maxWords);
+        while (bytes.hasRemaining()) {
+            int value = 0;
+            for (int i = 0; i < wordBytes; i++) {
+                int b = bytes.get() & 0xff;
+                value = littleEndian? value | (b << (8 * i)) : (value << 8) | b;
+            }
+            words.add(value, 1);
+        }
+        return words.toArray();
+    }
+
+    private static void skipWhitespaceAndComments(ByteBuffer bytes) {
+        while (bytes.hasRemaining()) {
+            byte b = bytes.get(bytes.position());
+            if (b == '#') {
+                while (bytes.hasRemaining() && bytes.get() != '\n');
+            } else if (isWhitespace(b)) {
+                bytes.get();
+            } else {
+                break;
+            }
+        }
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f';
+    }
+
+    private static boolean isDelimiter(byte b) {
+        return isWhitespace(b) || b == '#';
+    }
+
+    private static IllegalArgumentException invalidWord(ByteBuffer bytes, int start) {
+        int end = start;
+        while (end < bytes.limit() && !isDelimiter(bytes.get(end))) {
+            end++;
+        }
+        byte[] word = new byte[end - start];
+        for (int i = 0; i < word.length; i++) {
+            word[i] = bytes.get(start + i);
+        }
+        return new IllegalArgumentException(String.format(
+            "invalid word `%s' in memory image", new String(word, StandardCharsets.US_ASCII)));
+    }
+
+    /**
+     * A growable {@code int[]} that refuses to grow past a maximum size.
+     */
+    private static class Words {
+        private final int maxWords;
+        private int[] words;
+        private int size;
+
+        private Words(int maxWords) {
+            this.maxWords = maxWords;
+            this.words = new int[Math.min(maxWords, 1024)];
+        }
+
+        private void add(int value, long count) {
+            if (size + count > maxWords) {
+                throw new IllegalArgumentException(String.format(
+                    "memory image holds more than %d words, the size of the memory", maxWords));
+            }
+
+            int newSize = size + (int) count;
+            if (newSize > words.length) {
+                words = Arrays.copyOf(words, Math.min(maxWords, Math.max(newSize, words.length * 2)));
+            }
+            Arrays.fill(words, size, newSize, value);
+            size = newSize;
+        }
+
+        private int[] toArray() {
+            return Arrays.copyOf(words, size);
+        }
+    }
+}
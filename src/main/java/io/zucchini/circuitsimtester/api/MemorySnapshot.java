@@ -0,0 +1,46 @@
+package io.zucchini.circuitsimtester.api;
+
+/**
+ * The contents of a {@link Ram} or {@link Rom} at one instant, split into
+ * fixed-size pages. Taken with {@link BaseMemory#snapshot()} and put back
+ * with {@link BaseMemory#restore(MemorySnapshot)}, which only copies the
+ * pages that differ. Writes to memory are tracked a page at a time, so
+ * restoring the snapshot memory last matched, as when resetting memory
+ * to a known image between tests, only looks at the pages the test wrote
+ * to.
+ * <p>
+ * Pages are never modified once captured, so consecutive snapshots of
+ * the same memory share every page that was not written in between.
+ */
+public class MemorySnapshot {
+    static final int PAGE_SIZE = 1024;
+
+    private final int size;
+    private final int[][] pages;
+
+    MemorySnapshot(int size, int[][] pages) {
+        this.size = size;
+        this.pages = pages;
+    }
+
+    /**
+     * @return the number of words captured
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Reads a word from the snapshot.
+     *
+     * @param address the memory address to read
+     * @return the value at that address when the snapshot was taken
+     */
+    public int load(int address) {
+        return pages[address / PAGE_SIZE][address % PAGE_SIZE];
+    }
+
+    int[][] getPages() {
+        return pages;
+    }
+}
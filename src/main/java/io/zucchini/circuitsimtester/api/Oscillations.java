@@ -0,0 +1,142 @@
+package io.zucchini.circuitsimtester.api;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import com.ra4king.circuitsim.simulator.Circuit;
+import com.ra4king.circuitsim.simulator.CircuitState;
+import com.ra4king.circuitsim.simulator.Component;
+import com.ra4king.circuitsim.simulator.Port;
+import com.ra4king.circuitsim.simulator.Simulator;
+import com.ra4king.circuitsim.simulator.WireValue;
+
+/**
+ * Explains to students why their circuit never settled. When a gate's
+ * output feeds back into its own input (an inverter wired to itself is
+ * the classic), the wires in that loop change on every simulation step
+ * forever. So after giving up, we keep stepping the simulator a little
+ * longer and report whichever wires changed along the way.
+ */
+class Oscillations {
+    // How many extra steps to watch the circuit for
+    private static final int DIAGNOSIS_STEPS = 32;
+    // How many wires to list in the error message
+    private static final int MAX_REPORTED = 8;
+
+    /**
+     * Steps the simulator a little further and builds an exception
+     * listing the wires that kept changing.
+     *
+     * @param simulator the simulator which never settled
+     * @param describer returns a human-friendly description of a component
+     *                  such as {@code NOT gate at (12, 4)}
+     * @param why how we know the circuit never settled, to start the
+     *            message with
+     * @param cause the exception CircuitSim threw, or null if we gave up
+     *              first
+     * @return an exception to throw
+     */
+    static IllegalStateException diagnose(Simulator simulator, Function<Component, String> describer,
+                                          String why, Throwable cause) {
+        Set<Port.Link> changing = new LinkedHashSet<>();
+
+        try {
+            Map<LinkInState, WireValue> before = sample(simulator);
+            for (int step = 0; step < DIAGNOSIS_STEPS && simulator.hasLinksToUpdate(); step++) {
+                simulator.step();
+                Map<LinkInState, WireValue> after = sample(simulator);
+                for (Map.Entry<LinkInState, WireValue> entry : after.entrySet()) {
+                    if (!Objects.equals(entry.getValue(), before.get(entry.getKey()))) {
+                        changing.add(entry.getKey().link);
+                    }
+                }
+                before = after;
+            }
+        } catch (RuntimeException err) {
+            // CircuitSim may well complain about the oscillation again.
+            // Report whatever we found until then
+        }
+
+        StringBuilder message = new StringBuilder(why);
+        if (changing.isEmpty()) {
+            message.append(". Is there a loop in your circuit, like a gate whose output " +
+                           "feeds back into its own input?");
+        } else {
+            message.append(". These wires kept changing, so they are probably part of a " +
+                           "loop, like a gate whose output feeds back into its own input:");
+            int reported = 0;
+            for (Port.Link link : changing) {
+                if (reported++ == MAX_REPORTED) {
+                    message.append(String.format("\n  (and %d more)", changing.size() - MAX_REPORTED));
+                    break;
+                }
+                message.append("\n  ").append(describeLink(link, describer));
+            }
+        }
+
+        return new IllegalStateException(message.toString(), cause);
+    }
+
+    private static String describeLink(Port.Link link, Function<Component, String> describer) {
+        List<String> components = new ArrayList<>();
+        for (Port port : link.getParticipants()) {
+            components.add(describer.apply(port.getComponent()));
+        }
+        String circuitName = (link.getCircuit() == null)? "?" : link.getCircuit().getName();
+
+        return String.format("wire in subcircuit `%s' connecting %s", circuitName,
+                             components.stream().distinct().sorted().collect(Collectors.joining(", ")));
+    }
+
+    // The value of every link in every state of every circuit
+    private static Map<LinkInState, WireValue> sample(Simulator simulator) {
+        Map<LinkInState, WireValue> values = new HashMap<>();
+        for (Circuit circuit : simulator.getCircuits()) {
+            Set<Port.Link> links = new LinkedHashSet<>();
+            for (Component component : circuit.getComponents()) {
+                for (int i = 0; i < component.getNumPorts(); i++) {
+                    links.add(component.getPort(i).getLink());
+                }
+            }
+
+            for (CircuitState state : circuit.getCircuitStates()) {
+                for (Port.Link link : links) {
+                    WireValue value = state.getMergedValue(link);
+                    // Copy, in case CircuitSim reuses the WireValue
+                    values.put(new LinkInState(state, link), (value == null)? null : new WireValue(value));
+                }
+            }
+        }
+        return values;
+    }
+
+    private static class LinkInState {
+        private final CircuitState state;
+        private final Port.Link link;
+
+        private LinkInState(CircuitState state, Port.Link link) {
+            this.state = state;
+            this.link = link;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            LinkInState that = (LinkInState) o;
+            return state == that.state && link == that.link;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(state) + System.identityHashCode(link);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package io.zucchini.circuitsimtester.api;
 
+import com.ra4king.circuitsim.simulator.WireValue;
 import com.ra4king.circuitsim.simulator.components.wiring.Pin;
 
 /**
@@ -44,4 +45,12 @@ public class OutputPin extends BasePin {
     public int getSext() {
         return Bits.sext(get(), pin.getBitSize());
     }
+
+    /**
+     * Returns the raw CircuitSim value of this output pin, floating bits
+     * and all, without the overhead of {@link #get()}.
+     */
+    WireValue getWireValue() {
+        return subcircuit.getCircuitState().getLastReceived(pin.getPort(Pin.PORT));
+    }
 }
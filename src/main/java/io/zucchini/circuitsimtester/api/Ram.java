@@ -33,6 +33,38 @@ public class Ram extends BaseMemory {
         ram.store(subcircuit.getCircuitState(), address, value);
     }
 
+    @Override
+    public int size() {
+        return 1 << ram.getAddressBits();
+    }
+
+    @Override
+    int dataBits() {
+        return ram.getDataBits();
+    }
+
+    @Override
+    int[] contents() {
+        // CircuitSim keeps RAM contents in the component property for
+        // each circuit state. If that ever changes, fall back to
+        // load()/store() for each word
+        Object property = subcircuit.getCircuitState().getComponentProperty(ram);
+        return (property instanceof int[] && ((int[]) property).length == size())
+               ? (int[]) property : null;
+    }
+
+    @Override
+    void contentsChanged() {
+        // Nothing to do, same as store(): RAM reads its contents afresh
+        // whenever its inputs change
+    }
+
+    @Override
+    DirtyPages dirtyPages() {
+        // Also hears about store(), since that goes through the RAM
+        return subcircuit.dirtyPages(ram);
+    }
+
     /**
      * Returns the internal CircuitSim {@code RAM} component this
      * object wraps.
@@ -30,10 +30,39 @@ public class Rom extends BaseMemory {
 
     @Override
     public void store(int address, int value) {
+        // ROM contents survive resetting the simulation
+        subcircuit.markModified();
         rom.getMemory()[address] = value;
+        dirtyPages().written(address);
         subcircuit.getCircuit().forEachState(state -> rom.valueChanged(state, null, 0));
     }
 
+    @Override
+    public int size() {
+        return rom.getMemory().length;
+    }
+
+    @Override
+    int dataBits() {
+        return rom.getDataBits();
+    }
+
+    @Override
+    int[] contents() {
+        return rom.getMemory();
+    }
+
+    @Override
+    void contentsChanged() {
+        subcircuit.markModified();
+        subcircuit.getCircuit().forEachState(state -> rom.valueChanged(state, null, 0));
+    }
+
+    @Override
+    DirtyPages dirtyPages() {
+        return subcircuit.dirtyPages(rom);
+    }
+
     /**
      * Returns the internal CircuitSim {@code ROM} component this
      * object wraps.
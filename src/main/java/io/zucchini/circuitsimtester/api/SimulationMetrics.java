@@ -0,0 +1,78 @@
+package io.zucchini.circuitsimtester.api;
+
+/**
+ * How much work simulating a subcircuit has taken: how long loading it
+ * took, and how many times it propagated, how many clock cycles it ran,
+ * and how long it spent propagating since {@link
+ * Subcircuit#resetMetrics()}. {@link
+ * io.zucchini.circuitsimtester.extension.CircuitSimExtension} resets
+ * these before every test and reports them after, which helps find the
+ * tests (and the submissions) that are expensive to grade.
+ */
+public class SimulationMetrics {
+    private long loadNanos;
+    private long propagations;
+    private long cycles;
+    private long simulationNanos;
+
+    SimulationMetrics() {}
+
+    private SimulationMetrics(SimulationMetrics other) {
+        this.loadNanos = other.loadNanos;
+        this.propagations = other.propagations;
+        this.cycles = other.cycles;
+        this.simulationNanos = other.simulationNanos;
+    }
+
+    /**
+     * @return how long {@link Subcircuit#fromPath(String, String)} took to
+     *         load the circuit, in nanoseconds. Much shorter when the
+     *         circuit was already loaded by an earlier test class
+     */
+    public long getLoadNanos() { return loadNanos; }
+
+    /**
+     * @return how many times the circuit propagated, e.g. once per call
+     *         to {@link InputPin#set(int)}
+     */
+    public long getPropagations() { return propagations; }
+
+    /**
+     * @return how many cycles a {@link Clock} ticked
+     */
+    public long getCycles() { return cycles; }
+
+    /**
+     * @return the wall-clock time spent propagating, in nanoseconds
+     */
+    public long getSimulationNanos() { return simulationNanos; }
+
+    @Override
+    public String toString() {
+        return String.format("loaded in %.3f ms, %d propagations and %d cycles in %.3f ms",
+                             loadNanos / 1e6, propagations, cycles, simulationNanos / 1e6);
+    }
+
+    SimulationMetrics copy() {
+        return new SimulationMetrics(this);
+    }
+
+    void loaded(long nanos) {
+        loadNanos = nanos;
+    }
+
+    void propagated(long nanos) {
+        propagations++;
+        simulationNanos += nanos;
+    }
+
+    void cycled() {
+        cycles++;
+    }
+
+    void reset() {
+        propagations = 0;
+        cycles = 0;
+        simulationNanos = 0;
+    }
+}
@@ -0,0 +1,144 @@
+package io.zucchini.circuitsimtester.api;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.ra4king.circuitsim.gui.CircuitSim;
+import com.ra4king.circuitsim.simulator.Circuit;
+import com.ra4king.circuitsim.simulator.CircuitState;
+import com.ra4king.circuitsim.simulator.Component;
+import com.ra4king.circuitsim.simulator.WireValue;
+import com.ra4king.circuitsim.simulator.components.memory.ROM;
+
+/**
+ * Everything CircuitSim knows about a running simulation at one instant:
+ * the values every component is pushing onto its wires, and the internal
+ * state of every component, such as register and RAM contents, in every
+ * subcircuit. Also remembers ROM contents, which CircuitSim keeps outside
+ * the simulation.
+ * <p>
+ * Take one with {@link Subcircuit#snapshot()} after some expensive setup,
+ * like loading a program into RAM and booting a processor, and then go
+ * back to it with {@link Subcircuit#restore(SimulationSnapshot)} at the
+ * start of every test instead of repeating the setup. Snapshots are
+ * deep copies, so restoring one does not use it up.
+ */
+public class SimulationSnapshot {
+    private CircuitSim circuitSim;
+    private List<ComponentSnapshot> components;
+    private Map<ROM, int[]> romContents;
+
+    private SimulationSnapshot(CircuitSim circuitSim) {
+        this.circuitSim = circuitSim;
+        this.components = new ArrayList<>();
+        this.romContents = new HashMap<>();
+    }
+
+    /**
+     * Copies the state of every component in every state of every circuit
+     * simulated by {@code circuitSim}.
+     */
+    static SimulationSnapshot capture(CircuitSim circuitSim) {
+        SimulationSnapshot snapshot = new SimulationSnapshot(circuitSim);
+
+        for (Circuit circuit : circuitSim.getSimulator().getCircuits()) {
+            for (Component component : circuit.getComponents()) {
+                if (component instanceof ROM) {
+                    snapshot.romContents.put((ROM) component, ((ROM) component).getMemory().clone());
+                }
+
+                for (CircuitState state : circuit.getCircuitStates()) {
+                    snapshot.components.add(new ComponentSnapshot(state, component));
+                }
+            }
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Puts every component back the way it was when this snapshot was
+     * taken. The caller needs to propagate afterward. Components added
+     * since then (such as mocks) are left alone.
+     */
+    void restore(Subcircuit subcircuit) {
+        if (subcircuit.getCircuitSim() != circuitSim) {
+            throw new IllegalArgumentException(String.format(
+                "snapshot was not taken from the same circuit as subcircuit `%s'",
+                subcircuit.getName()));
+        }
+
+        for (Map.Entry<ROM, int[]> entry : romContents.entrySet()) {
+            int[] memory = entry.getKey().getMemory();
+            if (!Arrays.equals(memory, entry.getValue())) {
+                subcircuit.markModified();
+                System.arraycopy(entry.getValue(), 0, memory, 0, memory.length);
+                entry.getKey().getCircuit().forEachState(state -> entry.getKey().valueChanged(state, null, 0));
+            }
+        }
+
+        for (ComponentSnapshot component : components) {
+            component.restore();
+        }
+    }
+
+    private static class ComponentSnapshot {
+        private final CircuitState state;
+        private final Component component;
+        private final Object property;
+        private final WireValue[] pushed;
+
+        private ComponentSnapshot(CircuitState state, Component component) {
+            this.state = state;
+            this.component = component;
+            this.property = copy(state.getComponentProperty(component));
+            this.pushed = new WireValue[component.getNumPorts()];
+            for (int i = 0; i < pushed.length; i++) {
+                pushed[i] = copy(state.getLastPushed(component.getPort(i)));
+            }
+        }
+
+        private void restore() {
+            // Skip states thrown away since, like those of a subcircuit
+            // component which has been removed
+            if (!state.getCircuit().getCircuitStates().contains(state)) {
+                return;
+            }
+
+            state.putComponentProperty(component, copy(property));
+            for (int i = 0; i < pushed.length; i++) {
+                if (pushed[i] != null
+                        && !Objects.equals(pushed[i], state.getLastPushed(component.getPort(i)))) {
+                    state.pushValue(component.getPort(i), new WireValue(pushed[i]));
+                }
+            }
+        }
+
+        // Deep-copies the mutable component properties CircuitSim uses:
+        // int[] for RAM and WireValues for registers. Anything else (like
+        // the CircuitState of a subcircuit component) is shared
+        private static Object copy(Object property) {
+            if (property instanceof int[]) {
+                return ((int[]) property).clone();
+            } else if (property instanceof WireValue) {
+                return new WireValue((WireValue) property);
+            } else if (property instanceof WireValue[]) {
+                WireValue[] values = ((WireValue[]) property).clone();
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = (values[i] == null)? null : new WireValue(values[i]);
+                }
+                return values;
+            } else {
+                return property;
+            }
+        }
+
+        private static WireValue copy(WireValue value) {
+            return (value == null)? null : new WireValue(value);
+        }
+    }
+}
@@ -33,6 +33,7 @@ import com.ra4king.circuitsim.simulator.CircuitState;
 import com.ra4king.circuitsim.simulator.Component;
 import com.ra4king.circuitsim.simulator.components.wiring.Pin;
 import com.ra4king.circuitsim.simulator.Port;
+import com.ra4king.circuitsim.simulator.SimulationException;
 import com.ra4king.circuitsim.simulator.Simulator;
 
 /**
@@ -49,23 +50,29 @@ import com.ra4king.circuitsim.simulator.Simulator;
  * and for the benefit of those hacking on the CircuitSim tester. Just beware
  * that they may not be stable APIs.
  */
-public class Subcircuit {
+public class Subcircuit implements AutoCloseable {
+    // How often settling a propagation checks the execution budget's
+    // wall-clock limit, in simulation steps
+    private static final int DEADLINE_CHECK_STEPS = 64;
     private String name;
-    private CircuitSim circuitSim;
+    private LoadedCircuit loaded;
     private SubcircuitState state;
     // Used for lookups of components by name
     private ComponentNameInfo componentNameInfo;
+    // Built on first lookup, and rebuilt if we add components
+    private ComponentIndex flatIndex;
+    private ComponentIndex recursiveIndex;
 
     private Subcircuit(
-            String name, CircuitSim circuitSim, SubcircuitState state, ComponentNameInfo componentNameInfo) {
+            String name, LoadedCircuit loaded, SubcircuitState state, ComponentNameInfo componentNameInfo) {
         this.name = name;
-        this.circuitSim = circuitSim;
+        this.loaded = loaded;
         this.state = state;
         this.componentNameInfo = componentNameInfo;
     }
 
-    private Subcircuit(String name, CircuitSim circuitSim, SubcircuitState state) {
-        this(name, circuitSim, state, ComponentNameInfo.fromCircuitSim(circuitSim));
+    private Subcircuit(String name, LoadedCircuit loaded, SubcircuitState state) {
+        this(name, loaded, state, ComponentNameInfo.fromCircuitSim(loaded.circuitSim));
     }
 
     /**
@@ -88,7 +95,7 @@ public class Subcircuit {
      * @return the {@code CircuitSim} instance used for simulation
      */
     public CircuitSim getCircuitSim() {
-        return circuitSim;
+        return loaded.circuitSim;
     }
 
     /**
@@ -156,6 +163,10 @@ public class Subcircuit {
      * subcircuits in the file. So {@code "1-bit adder!"} will match
      * {@code "1 Bit Adder"}, {@code "1bit adder"}, {@code "1bitadder"},
      * {@code "1 B  I T A D DD E R"}, and so on.
+     * <p>
+     * Loaded circuits are cached by the contents of the file, so loading
+     * the same file again after {@link #close()}ing a {@code Subcircuit}
+     * from it skips parsing the file and instead resets the simulation.
      *
      * @param  simFilePath    path to the subcircuit. Usually relative, like
      * {@code "adder.sim"}
@@ -167,6 +178,7 @@ public class Subcircuit {
                               in violation of all good taste on Earth
      */
     public static Subcircuit fromPath(String simFilePath, String subcircuitName) throws Exception {
+        long start = System.nanoTime();
         File circuitFile = new File(simFilePath);
 
         // In theory, zucchini should guarantee this for us, but stuff
@@ -177,10 +189,122 @@ public class Subcircuit {
                 String.format("Cannot read circuit file `%s'", simFilePath));
         }
 
-        CircuitSim circuitSim = new CircuitSim(false);
-        circuitSim.loadCircuits(circuitFile);
+        CircuitCache.Entry entry = CircuitCache.checkout(circuitFile);
+        LoadedCircuit loaded = new LoadedCircuit(simFilePath, entry.getCircuitSim(), entry.getContentHash());
+        loaded.rootState = lookupSubcircuit(loaded.circuitSim, subcircuitName);
+        loaded.metrics.loaded(System.nanoTime() - start);
+
+        return new Subcircuit(subcircuitName, loaded, loaded.rootState);
+    }
+
+    /**
+     * Loads another, completely independent copy of this subcircuit from
+     * the same {@code .sim} file, with its own {@code CircuitSim} instance.
+     * The copy can be simulated on another thread.
+     * <p>
+     * The copy is loaded from the file, so any registers or clocks mocked
+     * in this subcircuit are <b>not</b> mocked in the copy. It does get
+     * the same {@linkplain #setExecutionBudget(long, long) execution
+     * budget}, with the clock already running as long as it has here, and
+     * the same {@linkplain #setOscillationLimit(int) oscillation limit}, so
+     * a runaway circuit gives up in a copy just like it would here.
+     * Remember to {@link #close()} the copy when you are done with it.
+     *
+     * @return a new {@code Subcircuit} simulating the same subcircuit
+     * @throws Exception      specified by {@code CircuitSim.loadCircuits()}
+     * @see #fromPath(String,String)
+     */
+    public Subcircuit loadCopy() throws Exception {
+        Subcircuit copy = fromPath(loaded.simFilePath, name);
+        copy.loaded.maxPropagations = loaded.maxPropagations;
+        copy.loaded.timeoutNanos = loaded.timeoutNanos;
+        copy.loaded.budgetStartNanos = loaded.budgetStartNanos;
+        copy.loaded.oscillationLimit = loaded.oscillationLimit;
+        return copy;
+    }
+
+    /**
+     * Finds the pin in this subcircuit corresponding to {@code pin}, which
+     * lives in another copy of it (see {@link #loadCopy()}), by looking it
+     * up by label like {@link #lookupPin(String,boolean,int,boolean)}.
+     *
+     * @throws IllegalArgumentException if {@code pin} has no label, like
+     *                                  pins made for mocked registers
+     */
+    @SuppressWarnings("unchecked")
+    <T extends BasePin> T lookupCorrespondingPin(T pin) {
+        String label = pin.getPin().getName();
+        if (label == null || label.isEmpty()) {
+            throw new IllegalArgumentException(
+                "Only labelled pins can be found in a copy of a subcircuit, " +
+                "not ones added by mocking or snitching on a tunnel");
+        }
+
+        // Pins in subcircuits placed inside this one are only found by a
+        // recursive lookup
+        boolean recursive = !pin.getSubcircuit().state.equals(pin.getSubcircuit().loaded.rootState);
+        return (T) lookupPin(label, pin instanceof InputPin, pin.getPin().getBitSize(), recursive);
+    }
+
+    /**
+     * Gives up the {@code CircuitSim} instance simulating this subcircuit.
+     * If the circuit was not rewired (for instance, by mocking a register
+     * or a clock), it will be reset and reused the next time the same
+     * {@code .sim} file is loaded by {@link #fromPath(String,String)}.
+     * <p>
+     * Do not use this subcircuit, or any pins or components found in it,
+     * after closing it. {@link
+     * io.zucchini.circuitsimtester.extension.CircuitSimExtension} calls
+     * this for you after all tests in a class run.
+     */
+    @Override
+    public void close() {
+        if (loaded.contentHash != null && !loaded.modified) {
+            CircuitCache.checkin(loaded.contentHash, loaded.circuitSim);
+        }
+
+        // Make closing twice harmless
+        loaded.contentHash = null;
+
+        // A reused CircuitSim should not keep telling us about its RAMs
+        for (Map.Entry<RAM, RAM.MemoryListener> listener : loaded.memoryListeners.entrySet()) {
+            listener.getKey().removeMemoryListener(listener.getValue());
+        }
+        loaded.memoryListeners.clear();
+        forgetMemoryContents();
+    }
+
+    /**
+     * Marks the circuit as changed in a way {@link #resetSimulation()}
+     * does not undo, so that it is not reused by a later test class.
+     */
+    void markModified() {
+        loaded.modified = true;
+    }
+
+    /**
+     * Returns which pages of a RAM or ROM component in this circuit have
+     * been written, shared by every {@link BaseMemory} wrapping it. For a
+     * RAM, that includes writes by the simulation itself.
+     */
+    DirtyPages dirtyPages(Component memory) {
+        return loaded.dirtyPages.computeIfAbsent(memory, component -> {
+            DirtyPages pages = new DirtyPages();
+            if (component instanceof RAM) {
+                RAM.MemoryListener listener = (address, data) -> pages.written(address);
+                ((RAM) component).addMemoryListener(listener);
+                loaded.memoryListeners.put((RAM) component, listener);
+            }
+            return pages;
+        });
+    }
 
-        return new Subcircuit(subcircuitName, circuitSim, lookupSubcircuit(circuitSim, subcircuitName));
+    // Memory changed in a way writes were not tracked through, so no RAM
+    // or ROM is known to match any MemorySnapshot anymore
+    private void forgetMemoryContents() {
+        for (DirtyPages pages : loaded.dirtyPages.values()) {
+            pages.forget();
+        }
     }
 
     // Create another version of this instance, except with a different
@@ -189,11 +313,11 @@ public class Subcircuit {
         // Don't create an unnecessary new instance
         return Objects.equals(this.state, state)
                ? this
-               : new Subcircuit(name, circuitSim, state, componentNameInfo);
+               : new Subcircuit(name, loaded, state, componentNameInfo);
     }
 
     private static String canonicalName(String name) {
-        return name.toLowerCase().replaceAll("[^0-9a-z]+", "");
+        return CanonicalNames.canonicalName(name);
     }
 
     private static SubcircuitState lookupSubcircuit(CircuitSim circuitSim, String subcircuitName) {
@@ -228,7 +352,268 @@ public class Subcircuit {
      * CircuitSim.
      */
     public void resetSimulation() {
-        circuitSim.getSimulator().reset();
+        getSimulator().reset();
+        forgetMemoryContents();
+    }
+
+    /**
+     * Captures the whole state of the simulation: what every component
+     * is outputting and its internal state, such as register and memory
+     * contents, across every subcircuit. Much cheaper than redoing
+     * expensive setup like booting a processor before every test; just
+     * {@link #restore(SimulationSnapshot)} this snapshot instead.
+     *
+     * @return a snapshot of the simulation
+     * @see SimulationSnapshot
+     */
+    public SimulationSnapshot snapshot() {
+        return SimulationSnapshot.capture(getCircuitSim());
+    }
+
+    /**
+     * Puts the simulation back the way it was when {@code snapshot} was
+     * taken, and lets the values propagate. Components added since, such
+     * as mocks, keep their current state.
+     *
+     * @param snapshot a snapshot taken with {@link #snapshot()} on this
+     *                 subcircuit, or any other {@code Subcircuit} from
+     *                 the same file returned by a lookup on it
+     * @throws IllegalArgumentException if the snapshot was taken from a
+     *                                  different {@code CircuitSim}
+     *                                  instance
+     */
+    public void restore(SimulationSnapshot snapshot) {
+        snapshot.restore(this);
+        forgetMemoryContents();
+        propagate();
+    }
+
+    /**
+     * Sets every input pin in {@code values} and then lets the changes
+     * propagate through the circuit <b>once</b>, rather than once per pin
+     * as calling {@link InputPin#set(int)} on each would. This is much
+     * faster for circuits with many inputs.
+     * <p>
+     * The circuit sees all the inputs change at the same instant, so for
+     * sequential logic where the order of input changes matters (like
+     * changing data and a clock together), set the pins one at a time
+     * instead.
+     *
+     * @param values the value to set each input pin to. Negative numbers
+     *               are fine
+     * @throws IllegalArgumentException if any pin is not simulated by the
+     *                                  same {@code CircuitSim} instance as
+     *                                  this subcircuit
+     * @see InputVector
+     */
+    public void apply(Map<InputPin, Integer> values) {
+        for (InputPin pin : values.keySet()) {
+            if (pin.getSubcircuit().getCircuitSim() != getCircuitSim()) {
+                throw new IllegalArgumentException(String.format(
+                    "input pin `%s' is not in the same circuit as subcircuit `%s'",
+                    pin.getPin().getName(), getName()));
+            }
+        }
+
+        for (Map.Entry<InputPin, Integer> value : values.entrySet()) {
+            value.getKey().write(value.getValue());
+        }
+        propagate();
+    }
+
+    /**
+     * Limits how much simulating this circuit may do from now on, counting
+     * every propagation (every {@link InputPin#set(int)}, for example)
+     * anywhere in the circuit, including in other {@code Subcircuit}s
+     * returned by lookups on this one. Once either limit is exceeded,
+     * every propagation throws an {@code IllegalStateException}, so a
+     * runaway circuit fails its test quickly instead of stalling the
+     * grader.
+     * <p>
+     * The wall-clock limit is also checked every few simulation steps while
+     * a propagation settles, so even a circuit that never settles gives up
+     * on time. {@link io.zucchini.circuitsimtester.extension.CircuitSimExtension}
+     * sets this from {@link SubcircuitTest#maxPropagations()} and {@link
+     * SubcircuitTest#timeoutMillis()} and restarts it before every test.
+     *
+     * @param maxPropagations the number of propagations allowed, or 0 for
+     *                        no limit
+     * @param timeoutMillis the wall-clock time allowed, in milliseconds,
+     *                      or 0 for no limit
+     * @see #restartExecutionBudget()
+     */
+    public void setExecutionBudget(long maxPropagations, long timeoutMillis) {
+        if (maxPropagations < 0 || timeoutMillis < 0) {
+            throw new IllegalArgumentException("execution budget limits cannot be negative");
+        }
+
+        loaded.maxPropagations = maxPropagations;
+        loaded.timeoutNanos = timeoutMillis * 1_000_000L;
+        restartExecutionBudget();
+    }
+
+    /**
+     * Forgets about any propagations and time spent so far, so that the
+     * circuit gets the whole budget given to {@link
+     * #setExecutionBudget(long, long)} again.
+     */
+    public void restartExecutionBudget() {
+        loaded.propagations = 0;
+        loaded.budgetStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Returns how many times the circuit has propagated since the
+     * execution budget was last set or restarted.
+     *
+     * @return the number of propagations
+     * @see #setExecutionBudget(long, long)
+     */
+    public long getPropagationCount() {
+        return loaded.propagations;
+    }
+
+    /**
+     * Returns how long this circuit took to load, and how much simulating
+     * it has taken since the last {@link #resetMetrics()}. Shared with
+     * every {@code Subcircuit} returned by lookups on this one.
+     *
+     * @return a copy of the current metrics
+     */
+    public SimulationMetrics getMetrics() {
+        return loaded.metrics.copy();
+    }
+
+    /**
+     * Starts counting propagations, cycles, and simulation time from zero
+     * again. {@link io.zucchini.circuitsimtester.extension.CircuitSimExtension}
+     * calls this before every test.
+     */
+    public void resetMetrics() {
+        loaded.metrics.reset();
+    }
+
+    /**
+     * Records that a {@link Clock} ran a cycle.
+     */
+    void countCycle() {
+        loaded.metrics.cycled();
+    }
+
+    /**
+     * Gives up on any propagation that takes more than {@code maxSteps}
+     * simulation steps to settle, instead of leaving it to CircuitSim to
+     * notice the circuit is oscillating. Either way, the resulting {@code
+     * IllegalStateException} lists the wires that kept changing.
+     * <p>
+     * A step updates every wire whose inputs changed in the previous step,
+     * so this is roughly the longest path through the circuit, in
+     * components. A limit in the hundreds is plenty for most homework
+     * circuits and fails a circuit wired into a loop in milliseconds.
+     * {@link io.zucchini.circuitsimtester.extension.CircuitSimExtension}
+     * sets this from {@link SubcircuitTest#oscillationLimit()}, which is a
+     * few thousand unless the test class says otherwise.
+     *
+     * @param maxSteps the most steps one propagation may take, or 0 to
+     *                 leave it to CircuitSim
+     */
+    public void setOscillationLimit(int maxSteps) {
+        if (maxSteps < 0) {
+            throw new IllegalArgumentException("oscillation limit cannot be negative");
+        }
+
+        loaded.oscillationLimit = maxSteps;
+    }
+
+    /**
+     * Lets any changes to inputs propagate through the circuit.
+     *
+     * @throws IllegalStateException if this would exceed the execution
+     *                               budget, or the circuit never settles
+     */
+    void propagate() {
+        checkExecutionBudget();
+        long start = System.nanoTime();
+
+        try {
+            settle();
+        } finally {
+            loaded.metrics.propagated(System.nanoTime() - start);
+        }
+    }
+
+    private void settle() {
+        Simulator simulator = getSimulator();
+
+        // Without a limit of our own to enforce, let CircuitSim settle the
+        // circuit in one go
+        if (loaded.oscillationLimit == 0 && loaded.timeoutNanos == 0) {
+            try {
+                simulator.stepAll();
+            } catch (SimulationException err) {
+                throw Oscillations.diagnose(simulator, this::describeComponent,
+                                            "The circuit never settled: " + err.getMessage(), err);
+            }
+        } else {
+            int steps = 0;
+            while (simulator.hasLinksToUpdate()) {
+                steps++;
+                if (loaded.oscillationLimit > 0 && steps > loaded.oscillationLimit) {
+                    throw Oscillations.diagnose(simulator, this::describeComponent, String.format(
+                        "The circuit was still changing after %d simulation steps",
+                        loaded.oscillationLimit), null);
+                }
+                // A step is cheap, so don't read the clock on every one
+                if (steps % DEADLINE_CHECK_STEPS == 0) {
+                    checkDeadline();
+                }
+                simulator.step();
+            }
+        }
+    }
+
+    // Describes a component so students can find it, like `AND gate at
+    // (12, 4)'
+    private String describeComponent(Component component) {
+        for (IndexedComponent indexed : getIndex(true).getComponents()) {
+            if (indexed.peer.getComponent() == component) {
+                String kind;
+                try {
+                    kind = indexed.getCategoryAndName().getValue();
+                } catch (IllegalStateException err) {
+                    kind = component.getClass().getSimpleName();
+                }
+                String label = component.getName();
+                return String.format("%s%s at (%d, %d)", kind,
+                                     (label == null || label.isEmpty())? "" : " `" + label + "'",
+                                     indexed.peer.getX(), indexed.peer.getY());
+            }
+        }
+
+        // Probably one of our own mock pins, or in a subcircuit outside this one
+        return component.getClass().getSimpleName();
+    }
+
+    private void checkExecutionBudget() {
+        long propagations = ++loaded.propagations;
+
+        if (loaded.maxPropagations > 0 && propagations > loaded.maxPropagations) {
+            throw new IllegalStateException(String.format(
+                "Gave up after the circuit propagated more than %d times, the most " +
+                "this test allows. Does it have a loop, or is it waiting on a signal " +
+                "that never comes?", loaded.maxPropagations));
+        }
+
+        checkDeadline();
+    }
+
+    private void checkDeadline() {
+        if (loaded.timeoutNanos > 0 && System.nanoTime() - loaded.budgetStartNanos > loaded.timeoutNanos) {
+            throw new IllegalStateException(String.format(
+                "Gave up after simulating the circuit for more than %d ms, the most " +
+                "this test allows. Does it have a loop, or is it waiting on a signal " +
+                "that never comes?", loaded.timeoutNanos / 1_000_000L));
+        }
     }
 
     /**
@@ -287,20 +672,17 @@ public class Subcircuit {
         }
 
         Map<String, List<ComponentPeer<?>>> matchingComponents = new HashMap<>();
-        // Run a depth-first search through the simulation DAG starting
-        // at this subcircuit. Setting revisit=true ensures we correctly count the
-        // components in multiple occurrences of the same subcircuit
-        walk(recursive, true, (circuitBoard, component) -> {
-            Pair<String, String> name = componentNameInfo.getPeerCategoryAndName(component);
+        for (IndexedComponent component : getIndex(recursive).getComponents()) {
+            Pair<String, String> name = component.getCategoryAndName();
             boolean match = goalCategories.contains(name.getKey()) ||
                             goalComponents.contains(name.getValue());
 
             if (match ^ inverse) {
                 matchingComponents.computeIfAbsent(
                     name.getValue(),
-                    k -> new ArrayList<>()).add(component);
+                    k -> new ArrayList<>()).add(component.peer);
             }
-        });
+        }
 
         return matchingComponents;
     }
@@ -459,26 +841,21 @@ public class Subcircuit {
             throw new IllegalArgumentException("tunnel label cannot be null");
         }
 
-        String canonicalLabel = canonicalName(label);
-        // Hack used because variables referenced in Lambdas must be
-        // effectively final: https://stackoverflow.com/a/32523185/321301
-        Tunnel[] tunnelFound = {null};
+        Tunnel tunnel = null;
 
-        walk(false, false, (state, peer) -> {
-            if (peer instanceof Tunnel &&
-                    canonicalName(peer.getProperties().getValue(Properties.LABEL)).equals(canonicalName(label))) {
-                int actualBits = peer.getProperties().getValue(Properties.BITSIZE);
+        for (IndexedComponent component : getIndex(false).getComponentsLabelled(canonicalName(label))) {
+            if (component.peer instanceof Tunnel) {
+                int actualBits = component.bits;
                 if (actualBits != wantBits) {
                     throw new IllegalArgumentException(String.format(
                         "Tunnel `%s' in subcircuit `%s' should have %d bits, not %d",
-                        label, state.circuitManager.getCircuitBoard().getCircuit().getName(),
+                        label, component.state.circuitManager.getCircuitBoard().getCircuit().getName(),
                         wantBits, actualBits));
                 }
-                tunnelFound[0] = (Tunnel) peer;
+                tunnel = (Tunnel) component.peer;
             }
-        });
+        }
 
-        Tunnel tunnel = tunnelFound[0];
         if (tunnel == null) {
             throw new IllegalArgumentException(String.format(
                 "No tunnel `%s' found in subcircuit `%s'", label, getCircuit().getName()));
@@ -498,15 +875,11 @@ public class Subcircuit {
         String canonicalLabel = (label == null)? null : canonicalName(label);
 
         List<Pair<SubcircuitState, T>> matches = new LinkedList<>();
-        // If we're doing recursive, we need to revisit to make sure we
-        // find duplicates
-        walk(recursive, true, (state, componentPeer) -> {
-            if (handle.matches(componentPeer) &&
-                    (label == null || canonicalLabel.equals(canonicalName(componentPeer.getProperties()
-                                                                                       .getValue(Properties.LABEL))))) {
-                matches.add(new Pair<>(state, (T)componentPeer));
+        for (IndexedComponent component : getIndex(recursive).getComponentsWithHandle(handle)) {
+            if (label == null || canonicalLabel.equals(component.canonicalLabel)) {
+                matches.add(new Pair<>(component.state, (T) component.peer));
             }
-        });
+        }
 
         String searchCriteria = (label == null)? ""
                                                : String.format(" labelled `%s'", label);
@@ -633,6 +1006,7 @@ public class Subcircuit {
     }
 
     private Port.Link makeOrphanPort(Port port) {
+        markModified();
         Port.Link link = port.getLink();
         port.unlinkPort(port);
         return link;
@@ -662,6 +1036,9 @@ public class Subcircuit {
             mockPinPeer.setY(mockPinPeer.getY() + 32);
         } while (!getCircuitBoard().isValidLocation(mockPinPeer));
 
+        markModified();
+        // Stale now that there's a new component
+        loaded.generation++;
         getCircuitBoard().addComponent(mockPinPeer);
 
         Pin mockPin = mockPinPeer.getComponent();
@@ -672,6 +1049,27 @@ public class Subcircuit {
         return mockPin;
     }
 
+    private ComponentIndex getIndex(boolean recursive) {
+        ComponentIndex index = recursive? recursiveIndex : flatIndex;
+
+        if (index == null || index.generation != loaded.generation) {
+            index = new ComponentIndex(loaded.generation);
+            // Run a depth-first search through the simulation DAG starting
+            // at this subcircuit. Setting revisit=true ensures we correctly
+            // count the components in, and find duplicates across, multiple
+            // occurrences of the same subcircuit
+            walk(recursive, true, index::add);
+
+            if (recursive) {
+                recursiveIndex = index;
+            } else {
+                flatIndex = index;
+            }
+        }
+
+        return index;
+    }
+
     private void walk(boolean recursive, boolean revisit, BiConsumer<SubcircuitState, ComponentPeer<?>> consumer) {
         Set<String> visitedSubcircuits = revisit? Collections.emptySet()
                                                 : new HashSet<>();
@@ -708,6 +1106,125 @@ public class Subcircuit {
         }
     }
 
+    /**
+     * Shared by every {@code Subcircuit} wrapping the same {@code CircuitSim}
+     * instance, including the ones made by {@link #withSubcircuitState}.
+     */
+    private static class LoadedCircuit {
+        private String simFilePath;
+        private CircuitSim circuitSim;
+        // The subcircuit originally requested from fromPath()
+        private SubcircuitState rootState;
+        // null once closed
+        private String contentHash;
+        private boolean modified;
+        // Bumped whenever a component is added anywhere in the circuit
+        private int generation;
+        // Execution budget. 0 means no limit
+        private long maxPropagations;
+        private long timeoutNanos;
+        private long propagations;
+        private long budgetStartNanos;
+        // Most steps in one propagation. 0 means leave it to stepAll()
+        private int oscillationLimit;
+        private SimulationMetrics metrics;
+        // For each RAM or ROM anyone has wrapped, which pages were written
+        private Map<Component, DirtyPages> dirtyPages;
+        // So that closing can unhook them again
+        private Map<RAM, RAM.MemoryListener> memoryListeners;
+
+        private LoadedCircuit(String simFilePath, CircuitSim circuitSim, String contentHash) {
+            this.simFilePath = simFilePath;
+            this.circuitSim = circuitSim;
+            this.contentHash = contentHash;
+            this.modified = false;
+            this.budgetStartNanos = System.nanoTime();
+            this.metrics = new SimulationMetrics();
+            this.dirtyPages = new HashMap<>();
+            this.memoryListeners = new HashMap<>();
+        }
+    }
+
+    /**
+     * All the components found by one {@link #walk} over a subcircuit,
+     * grouped so that lookups do not need to walk the circuit again or
+     * normalize every label again.
+     */
+    private class ComponentIndex {
+        private final int generation;
+        private final List<IndexedComponent> components;
+        private final Map<ComponentHandle, List<IndexedComponent>> byHandle;
+        private final Map<String, List<IndexedComponent>> byLabel;
+
+        private ComponentIndex(int generation) {
+            this.generation = generation;
+            this.components = new ArrayList<>();
+            this.byHandle = new HashMap<>();
+            this.byLabel = new HashMap<>();
+        }
+
+        private void add(SubcircuitState state, ComponentPeer<?> peer) {
+            IndexedComponent component = new IndexedComponent(state, peer);
+            components.add(component);
+
+            if (component.handle != null) {
+                byHandle.computeIfAbsent(component.handle, k -> new ArrayList<>()).add(component);
+            }
+            if (component.canonicalLabel != null) {
+                byLabel.computeIfAbsent(component.canonicalLabel, k -> new ArrayList<>()).add(component);
+            }
+        }
+
+        // All in the order the walk found them
+        public List<IndexedComponent> getComponents() {
+            return components;
+        }
+
+        public List<IndexedComponent> getComponentsWithHandle(ComponentHandle handle) {
+            return byHandle.getOrDefault(handle, Collections.emptyList());
+        }
+
+        public List<IndexedComponent> getComponentsLabelled(String canonicalLabel) {
+            return byLabel.getOrDefault(canonicalLabel, Collections.emptyList());
+        }
+    }
+
+    private class IndexedComponent {
+        private final SubcircuitState state;
+        private final ComponentPeer<?> peer;
+        // null if the component is unknown to CircuitSim's ComponentManager
+        private final ComponentHandle handle;
+        // null if the component has no label
+        private final String canonicalLabel;
+        // -1 if the component has no bit size
+        private final int bits;
+
+        private IndexedComponent(SubcircuitState state, ComponentPeer<?> peer) {
+            this.state = state;
+            this.peer = peer;
+
+            ComponentHandle handle;
+            try {
+                handle = componentNameInfo.findPeerHandle(peer);
+            } catch (IllegalStateException err) {
+                // Only complain if someone asks for its name (see below)
+                handle = null;
+            }
+            this.handle = handle;
+
+            Properties properties = peer.getProperties();
+            Property<?> label = properties.getProperty(Properties.LABEL.name);
+            this.canonicalLabel = (label == null)? null : canonicalName(label.getStringValue());
+            this.bits = (properties.getProperty(Properties.BITSIZE.name) == null)
+                        ? -1 : properties.getValue(Properties.BITSIZE);
+        }
+
+        public Pair<String, String> getCategoryAndName() {
+            return (handle == null)? componentNameInfo.getPeerCategoryAndName(peer)
+                                   : componentNameInfo.getCategoryAndName(handle);
+        }
+    }
+
     private static class SubcircuitState {
         private CircuitManager circuitManager;
         private CircuitState circuitState;
@@ -794,6 +1311,11 @@ public class Subcircuit {
     }
 
     private static class ComponentNameInfo {
+        // ComponentManager only knows the components built into CircuitSim,
+        // so every CircuitSim instance gives the same answer. Work it out
+        // for the first one and share it with every Subcircuit after
+        private static volatile ComponentNameInfo shared;
+
         private Set<String> categoryNamesKnown;
         private Set<String> componentNamesKnown;
         private Map<Class<? extends ComponentPeer<?>>, List<ComponentHandle>> handlesByClass;
@@ -805,11 +1327,12 @@ public class Subcircuit {
                                   Map<Class<? extends ComponentPeer<?>>, List<ComponentHandle>> handlesByClass,
                                   Map<ComponentHandle, Pair<String, String>> componentClassNames,
                                   Map<Pair<String, String>, ComponentHandle> componentsByName) {
-            this.categoryNamesKnown = categoryNamesKnown;
-            this.componentNamesKnown = componentNamesKnown;
-            this.handlesByClass = handlesByClass;
-            this.componentClassNames = componentClassNames;
-            this.componentsByName = componentsByName;
+            // Shared between threads, so nobody gets to change it
+            this.categoryNamesKnown = Collections.unmodifiableSet(categoryNamesKnown);
+            this.componentNamesKnown = Collections.unmodifiableSet(componentNamesKnown);
+            this.handlesByClass = Collections.unmodifiableMap(handlesByClass);
+            this.componentClassNames = Collections.unmodifiableMap(componentClassNames);
+            this.componentsByName = Collections.unmodifiableMap(componentsByName);
         }
 
         private static ComponentHandle findHandle(
@@ -827,8 +1350,21 @@ public class Subcircuit {
                                                          clazz.getCanonicalName() + " is not 1!"));
         }
 
-        // Find the names of CircuitSim components and component categories
         public static ComponentNameInfo fromCircuitSim(CircuitSim circuitSim) {
+            ComponentNameInfo info = shared;
+            if (info == null) {
+                synchronized (ComponentNameInfo.class) {
+                    info = shared;
+                    if (info == null) {
+                        info = shared = compute(circuitSim);
+                    }
+                }
+            }
+            return info;
+        }
+
+        // Find the names of CircuitSim components and component categories
+        private static ComponentNameInfo compute(CircuitSim circuitSim) {
             // Roi is a confirmed alpha male and does not allow direct access
             // to ComponentManager.components, so we have to do this
             List<ComponentLauncherInfo> componentLauncherInfos = new ArrayList<>();
@@ -879,7 +1415,8 @@ public class Subcircuit {
                                                return clis.stream()
                                                           .map(cli -> new ComponentHandle(clazz,
                                                                                           cli.properties.getProperty(propName)))
-                                                          .collect(Collectors.toList());
+                                                          .collect(Collectors.collectingAndThen(
+                                                              Collectors.toList(), Collections::unmodifiableList));
                                            }
                                        }
 
@@ -925,6 +1462,10 @@ public class Subcircuit {
             return name;
         }
 
+        public Pair<String, String> getCategoryAndName(ComponentHandle handle) {
+            return componentClassNames.get(handle);
+        }
+
         public ComponentHandle getComponentByCategoryAndName(String category, String name) {
             ComponentHandle handle = componentsByName.get(new Pair<>(category, name));
             if (handle == null) {
@@ -934,11 +1475,11 @@ public class Subcircuit {
         }
 
         public Set<String> getCategoryNamesKnown() {
-            return Collections.unmodifiableSet(categoryNamesKnown);
+            return categoryNamesKnown;
         }
 
         public Set<String> getComponentNamesKnown() {
-            return Collections.unmodifiableSet(componentNamesKnown);
+            return componentNamesKnown;
         }
     }
 }
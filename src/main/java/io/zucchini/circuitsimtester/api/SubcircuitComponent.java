@@ -92,6 +92,32 @@ public @interface SubcircuitComponent {
      */
     Type type() default Type.INFER;
 
+    /**
+     * For {@link Ram}s and {@link Rom}s: a memory image file to load into
+     * memory, starting at address 0, before every test. Usually a relative
+     * path, which is resolved against the working directory (not the
+     * submission directory, since images usually come with the grader).
+     * <p>
+     * Parsed images are cached for the whole JVM, so grading many
+     * submissions against the same image parses it only once.
+     * <p>
+     * The default is {@code ""}, meaning do not preload anything.
+     *
+     * @return the path of a memory image to load before every test, or
+     *         {@code ""} for none
+     * @see BaseMemory#preload(java.nio.file.Path, BaseMemory.ImageFormat)
+     */
+    String preload() default "";
+
+    /**
+     * For {@link Ram}s and {@link Rom}s: the format of the {@link
+     * #preload()} image. The default is the {@code .dat} format saved by
+     * the CircuitSim memory editor.
+     *
+     * @return the format of the memory image
+     */
+    BaseMemory.ImageFormat preloadFormat() default BaseMemory.ImageFormat.HEX;
+
     /**
      * Please see {@link SubcircuitComponent#type()} for details on this enum.
      *
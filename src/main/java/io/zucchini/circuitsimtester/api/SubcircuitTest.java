@@ -88,4 +88,67 @@ public @interface SubcircuitTest {
      *         false if it should not
      */
     boolean verifyInputPinCount() default true;
+
+    /**
+     * Fail any test that makes the circuit propagate more than this many
+     * times, for example by calling {@link InputPin#set(int)} or ticking a
+     * {@link Clock}. Counted separately for each test.
+     * <p>
+     * Defaults to 0, meaning no limit.
+     *
+     * @return the number of propagations each test may perform, or 0 for
+     *         no limit
+     * @see Subcircuit#setExecutionBudget(long, long)
+     */
+    long maxPropagations() default 0;
+
+    /**
+     * Fail any test that runs for more than this many milliseconds of
+     * wall-clock time, even in the middle of a propagation that never
+     * settles. The clock starts before each test and counts everything
+     * until it ends, including the test's own code, garbage collection,
+     * and time lost to other tests running alongside it, so leave plenty
+     * of headroom, or prefer {@link #maxPropagations()}, which does not
+     * depend on how busy the machine is.
+     * <p>
+     * Defaults to 0, meaning no limit, unless the launcher was given
+     * {@code --timeout MS}.
+     *
+     * @return the milliseconds each test may spend simulating, or 0 for
+     *         no limit
+     * @see Subcircuit#setExecutionBudget(long, long)
+     */
+    long timeoutMillis() default 0;
+
+    /**
+     * Fail any test where a single propagation takes more than this many
+     * simulation steps to settle, listing the wires that kept changing.
+     * Catches circuits wired into a loop much sooner than CircuitSim does.
+     * <p>
+     * Defaults to 5000, far more than any circuit that settles needs. Set
+     * it to 0 to leave it to CircuitSim instead.
+     *
+     * @return the most steps one propagation may take, or 0 for
+     *         CircuitSim's own limit
+     * @see Subcircuit#setOscillationLimit(int)
+     */
+    int oscillationLimit() default 5000;
+
+    /**
+     * Once a test method has failed this many times, skip the rest of its
+     * invocations, such as the remaining rows of a {@code
+     * ParameterizedTest}, instead of running them against a circuit that
+     * is clearly wrong. The launcher counts every invocation skipped this
+     * way as failed, even though some of them might have passed, so this
+     * can lower the partial credit of a circuit that is only partly
+     * wrong. Pick a threshold high enough that you are happy to give up
+     * on a circuit that has failed that many times.
+     * <p>
+     * Defaults to 0, meaning run every invocation, unless the launcher
+     * was given {@code --fail-fast N}.
+     *
+     * @return the number of failures after which to skip the rest of a
+     *         test method, or 0 to never skip
+     */
+    int failFastAfter() default 0;
 }
@@ -0,0 +1,728 @@
+package io.zucchini.circuitsimtester.api;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import com.ra4king.circuitsim.simulator.WireValue;
+
+/**
+ * Checks a combinational subcircuit against a Java reference function for
+ * every combination of inputs (or a subset you declare) in a tight loop,
+ * reporting all mismatches as one result. This is much faster than a
+ * {@code @ParameterizedTest} with one invocation per row, since JUnit
+ * overhead dominates for small circuits. Example:
+ * <pre>
+ * {@literal @}Test
+ * public void add() {
+ *     new TruthTable().input(a)
+ *                     .input(b)
+ *                     .input(sel, 0b01)
+ *                     .output(out)
+ *                     .reference((in, out) -&gt; out[0] = in[0] + in[1])
+ *                     .assertMatches();
+ * }
+ * </pre>
+ * Inputs are enumerated like nested for loops in the order they were
+ * declared, so the last input changes fastest. Only inputs whose values
+ * changed are set between rows, and the circuit propagates once per row.
+ * Expected values are truncated to the bit size of their output pin before
+ * comparing, so reference functions do not need to mask off overflow.
+ * <p>
+ * For wide datapaths with millions of rows, {@link #parallel(int)} splits
+ * the rows into ranges checked at the same time on independently loaded
+ * copies of the subcircuit. For circuits built only from gates,
+ * multiplexers and constants, {@link #engine(Engine)} can also skip
+ * CircuitSim's simulator altogether.
+ */
+public class TruthTable {
+    private static final int DEFAULT_MAX_REPORTED = 8;
+    // How many rows to check against the simulator before trusting a
+    // compiled circuit. At most 64, so they fit in the lanes of a long
+    private static final int VALIDATION_SAMPLES = 64;
+
+    private List<InputPin> inputs;
+    // null entry means every value that fits in the pin
+    private List<int[]> domains;
+    private List<OutputPin> outputs;
+    private Reference reference;
+    private int maxReported;
+    private int parallelism;
+    private Engine engine;
+    // Set by compile() when the compiled circuit checks out row by row but
+    // not 64 rows at a time, so run() should evaluate it row by row
+    private boolean slicingFailed;
+
+    /**
+     * How to compute the outputs of the circuit for each row.
+     */
+    public enum Engine {
+        /**
+         * Write the input pins and let CircuitSim propagate the values
+         * through the circuit, exactly like a normal test would.
+         */
+        SIMULATOR,
+        /**
+         * Compile the subcircuit into a flat list of bitwise operations and
+         * evaluate that instead, which is orders of magnitude faster. Only
+         * works if the subcircuit contains nothing but gates, NOT gates,
+         * multiplexers, constants and pins, and only if the compiled
+         * circuit agrees with CircuitSim on a sample of rows; otherwise
+         * falls back to {@link #SIMULATOR}. Either way, {@link
+         * Result#getEngine()} says which engine actually ran.
+         * <p>
+         * The compiled circuit never propagates, so apart from checking
+         * the sample rows, it does not count against the subcircuit's
+         * {@linkplain Subcircuit#setExecutionBudget(long, long) execution
+         * budget} or {@linkplain Subcircuit#setOscillationLimit(int)
+         * oscillation limit}. Only circuits without loops compile, so it
+         * cannot run away.
+         */
+        COMPILED,
+        /**
+         * Like {@link #COMPILED}, but evaluate 64 rows at once, one per bit
+         * of a {@code long}. Only works if every pin and wire in the
+         * subcircuit is 1 bit wide, as in full adders or decoders;
+         * otherwise falls back to {@link #COMPILED}, and failing that, to
+         * {@link #SIMULATOR}.
+         */
+        BIT_SLICED,
+    }
+
+    /**
+     * Computes the expected outputs of the circuit.
+     */
+    @FunctionalInterface
+    public interface Reference {
+        /**
+         * Computes the outputs expected for one row of the truth table.
+         *
+         * @param inputs the value of each input, in the order declared with
+         *               {@link TruthTable#input(InputPin)}. Do not modify
+         * @param outputs where to write the value expected for each output,
+         *                in the order declared with {@link
+         *                TruthTable#output(OutputPin)}. Zeroed before every
+         *                call
+         */
+        void evaluate(int[] inputs, int[] outputs);
+    }
+
+    /**
+     * Creates an empty truth table. Add inputs, outputs and a reference
+     * before running it.
+     */
+    public TruthTable() {
+        this.inputs = new ArrayList<>();
+        this.domains = new ArrayList<>();
+        this.outputs = new ArrayList<>();
+        this.maxReported = DEFAULT_MAX_REPORTED;
+        this.parallelism = 1;
+        this.engine = Engine.SIMULATOR;
+    }
+
+    /**
+     * Sweeps {@code pin} over every value that fits in it, from 0 to
+     * 2<sup>bits</sup>&nbsp;&minus;&nbsp;1.
+     *
+     * @param pin the input pin to sweep
+     * @return this truth table, for chaining
+     */
+    public TruthTable input(InputPin pin) {
+        inputs.add(pin);
+        domains.add(null);
+        return this;
+    }
+
+    /**
+     * Sweeps {@code pin} over only the values given, in the order given.
+     *
+     * @param pin the input pin to sweep
+     * @param values the values to try. Must not be empty
+     * @return this truth table, for chaining
+     */
+    public TruthTable input(InputPin pin, int... values) {
+        if (values.length == 0) {
+            throw new IllegalArgumentException("need at least one value to try for an input");
+        }
+
+        inputs.add(pin);
+        domains.add(values.clone());
+        return this;
+    }
+
+    /**
+     * Checks {@code pin} against the reference function for every row.
+     *
+     * @param pin the output pin to check
+     * @return this truth table, for chaining
+     */
+    public TruthTable output(OutputPin pin) {
+        outputs.add(pin);
+        return this;
+    }
+
+    /**
+     * Sets the Java function computing the expected outputs.
+     *
+     * @param reference the reference implementation of the circuit
+     * @return this truth table, for chaining
+     */
+    public TruthTable reference(Reference reference) {
+        this.reference = reference;
+        return this;
+    }
+
+    /**
+     * Sets how many mismatches to remember for reporting. All mismatches
+     * are still counted. Defaults to 8.
+     *
+     * @param maxReported the number of mismatches to report
+     * @return this truth table, for chaining
+     */
+    public TruthTable maxReported(int maxReported) {
+        this.maxReported = maxReported;
+        return this;
+    }
+
+    /**
+     * Splits the rows into {@code workers} contiguous ranges and checks them
+     * at the same time on a fork-join pool. The first range is checked on
+     * the subcircuit the pins live in, and every other range on its own copy
+     * loaded with {@link Subcircuit#loadCopy()}, where the pins are found
+     * again by label. Mismatches are still reported in row order.
+     * <p>
+     * This means that every pin must be labelled, that the subcircuit must
+     * behave the same when freshly loaded from its file (so no mocked
+     * registers or clocks), and that the reference function must be safe
+     * to call from several threads at once. Defaults to 1, checking every
+     * row on the calling thread.
+     *
+     * @param workers how many ranges to check at the same time
+     * @return this truth table, for chaining
+     */
+    public TruthTable parallel(int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("need at least one worker");
+        }
+
+        this.parallelism = workers;
+        return this;
+    }
+
+    /**
+     * Chooses how to compute the outputs of the circuit for each row.
+     * Defaults to {@link Engine#SIMULATOR}.
+     *
+     * @param engine the engine to use
+     * @return this truth table, for chaining
+     */
+    public TruthTable engine(Engine engine) {
+        this.engine = engine;
+        return this;
+    }
+
+    /**
+     * Returns how many rows the truth table has.
+     *
+     * @return the number of input combinations that will be checked
+     */
+    public long size() {
+        long size = 1;
+        for (int i = 0; i < inputs.size(); i++) {
+            size = Math.multiplyExact(size, domainSize(i));
+        }
+        return size;
+    }
+
+    /**
+     * Checks every row of the truth table.
+     *
+     * @return the number of rows checked and the first mismatches found
+     */
+    public Result run() {
+        validate();
+        long size = size();
+        return (parallelism > 1 && size > 1)? runParallel(size) : run(0, size);
+    }
+
+    /**
+     * Checks every row of the truth table and throws if any output did not
+     * match the reference.
+     *
+     * @throws AssertionError describing how many rows failed, and the first
+     *                        few failures
+     */
+    public void assertMatches() {
+        Result result = run();
+        if (result.getMismatchCount() > 0) {
+            throw new AssertionError(result.toString());
+        }
+    }
+
+    private void validate() {
+        if (inputs.isEmpty() || outputs.isEmpty()) {
+            throw new IllegalStateException("a truth table needs at least one input and one output");
+        }
+        if (reference == null) {
+            throw new IllegalStateException("a truth table needs a reference function");
+        }
+        // Floating outputs are tracked in the bits of a long
+        if (outputs.size() > 64) {
+            throw new IllegalStateException("a truth table can check at most 64 outputs");
+        }
+
+        Subcircuit subcircuit = inputs.get(0).getSubcircuit();
+        for (InputPin pin : inputs) {
+            if (pin.getSubcircuit().getCircuitSim() != subcircuit.getCircuitSim()) {
+                throw new IllegalArgumentException("all inputs in a truth table must be in the same circuit");
+            }
+        }
+    }
+
+    private Result runParallel(long size) {
+        int ranges = (int) Math.min(parallelism, size);
+        ForkJoinPool pool = new ForkJoinPool(ranges);
+
+        try {
+            // The first size % ranges ranges get one extra row each
+            long base = size / ranges;
+            long extra = size % ranges;
+            List<ForkJoinTask<Result>> tasks = new ArrayList<>();
+            for (int range = 0; range < ranges; range++) {
+                long from = base * range + Math.min(range, extra);
+                long to = from + base + (range < extra? 1 : 0);
+
+                if (range == 0) {
+                    tasks.add(pool.submit(() -> run(from, to)));
+                } else {
+                    tasks.add(pool.submit(() -> runOnCopy(from, to)));
+                }
+            }
+
+            Result merged = null;
+            for (ForkJoinTask<Result> task : tasks) {
+                Result result = task.join();
+                if (merged == null) {
+                    merged = new Result(this, result.engine);
+                }
+                merged.merge(result);
+            }
+            return merged;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private Result runOnCopy(long from, long to) throws Exception {
+        try (Subcircuit copy = inputs.get(0).getSubcircuit().loadCopy()) {
+            TruthTable table = new TruthTable();
+            for (int i = 0; i < inputs.size(); i++) {
+                table.inputs.add(copy.lookupCorrespondingPin(inputs.get(i)));
+                table.domains.add(domains.get(i));
+            }
+            for (OutputPin output : outputs) {
+                table.outputs.add(copy.lookupCorrespondingPin(output));
+            }
+            table.reference = reference;
+            table.maxReported = maxReported;
+            table.engine = engine;
+
+            return table.run(from, to);
+        }
+    }
+
+    // Checks rows [from, to)
+    Result run(long from, long to) {
+        int[] masks = outputMasks();
+        CompiledCircuit compiled = (engine == Engine.SIMULATOR)? null : compile(masks);
+
+        if (compiled != null && engine == Engine.BIT_SLICED && compiled.isBitSliceable() && !slicingFailed) {
+            return runSliced(from, to, compiled);
+        } else {
+            return runRows(from, to, masks, compiled);
+        }
+    }
+
+    // Checks rows [from, to) one at a time, with the simulator if compiled
+    // is null
+    private Result runRows(long from, long to, int[] masks, CompiledCircuit compiled) {
+        Subcircuit subcircuit = inputs.get(0).getSubcircuit();
+        int[] inputValues = new int[inputs.size()];
+        int[] digits = new int[inputs.size()];
+        int[] expected = new int[outputs.size()];
+        int[] actual = new int[outputs.size()];
+        Result result = new Result(this, (compiled == null)? Engine.SIMULATOR : Engine.COMPILED);
+
+        // Start from row `from' with every pin set
+        decodeRow(from, digits, inputValues, compiled == null);
+
+        for (long row = from; row < to; row++) {
+            if (row > from) {
+                nextRow(digits, inputValues, compiled == null);
+            }
+
+            long floating;
+            if (compiled == null) {
+                subcircuit.propagate();
+                floating = readOutputs(actual);
+            } else {
+                compiled.evaluate(inputValues, actual);
+                floating = 0;
+            }
+
+            Arrays.fill(expected, 0);
+            reference.evaluate(inputValues, expected);
+
+            boolean mismatch = floating != 0;
+            for (int i = 0; i < outputs.size(); i++) {
+                if ((floating & (1L << i)) == 0) {
+                    mismatch |= ((expected[i] ^ actual[i]) & masks[i]) != 0;
+                }
+                expected[i] &= masks[i];
+            }
+
+            result.checked++;
+            if (mismatch) {
+                result.addMismatch(inputValues, expected, actual, floating);
+            }
+        }
+
+        return result;
+    }
+
+    // Checks rows [from, to) 64 at a time, with row start + k in bit k (or
+    // "lane" k) of every long
+    private Result runSliced(long from, long to, CompiledCircuit compiled) {
+        int[] inputValues = new int[inputs.size()];
+        int[] digits = new int[inputs.size()];
+        int[] expected = new int[outputs.size()];
+        int[] actual = new int[outputs.size()];
+        int[] mismatchInputs = new int[inputs.size()];
+        int[] mismatchDigits = new int[inputs.size()];
+        long[] inputLanes = new long[inputs.size()];
+        long[] expectedLanes = new long[outputs.size()];
+        long[] actualLanes = new long[outputs.size()];
+        Result result = new Result(this, Engine.BIT_SLICED);
+
+        decodeRow(from, digits, inputValues, false);
+
+        for (long start = from; start < to; start += 64) {
+            int width = (int) Math.min(64, to - start);
+            Arrays.fill(inputLanes, 0);
+            Arrays.fill(expectedLanes, 0);
+
+            for (int lane = 0; lane < width; lane++) {
+                if (start + lane > from) {
+                    nextRow(digits, inputValues, false);
+                }
+
+                Arrays.fill(expected, 0);
+                reference.evaluate(inputValues, expected);
+
+                for (int i = 0; i < inputs.size(); i++) {
+                    inputLanes[i] |= (inputValues[i] & 1L) << lane;
+                }
+                for (int i = 0; i < outputs.size(); i++) {
+                    expectedLanes[i] |= (expected[i] & 1L) << lane;
+                }
+            }
+
+            compiled.evaluateSliced(inputLanes, actualLanes);
+
+            long wrong = 0;
+            for (int i = 0; i < outputs.size(); i++) {
+                wrong |= expectedLanes[i] ^ actualLanes[i];
+            }
+            if (width < 64) {
+                wrong &= (1L << width) - 1;
+            }
+
+            result.checked += width;
+            for (; wrong != 0; wrong &= wrong - 1) {
+                int lane = Long.numberOfTrailingZeros(wrong);
+                decodeRow(start + lane, mismatchDigits, mismatchInputs, false);
+                for (int i = 0; i < outputs.size(); i++) {
+                    expected[i] = (int) (expectedLanes[i] >>> lane) & 1;
+                    actual[i] = (int) (actualLanes[i] >>> lane) & 1;
+                }
+                result.addMismatch(mismatchInputs, expected, actual, 0);
+            }
+        }
+
+        return result;
+    }
+
+    // Compiles the circuit and checks it against the simulator on the
+    // first and last rows and a deterministic sample of the rest, one lane
+    // per sample if we are going to evaluate it bit-sliced. Returns null if
+    // the compiled circuit disagrees with the simulator, meaning we should
+    // stick to it. If only the bit-sliced evaluation disagrees, sets
+    // slicingFailed and returns the compiled circuit to evaluate row by row
+    private CompiledCircuit compile(int[] masks) {
+        slicingFailed = false;
+        CompiledCircuit compiled = CompiledCircuit.compile(inputs, outputs);
+        if (compiled == null) {
+            return null;
+        }
+
+        Subcircuit subcircuit = inputs.get(0).getSubcircuit();
+        int[] inputValues = new int[inputs.size()];
+        int[] digits = new int[inputs.size()];
+        int[] simulated = new int[outputs.size()];
+        int[] evaluated = new int[outputs.size()];
+        boolean sliced = engine == Engine.BIT_SLICED && compiled.isBitSliceable();
+        long[] inputLanes = new long[inputs.size()];
+        long[] simulatedLanes = new long[outputs.size()];
+        long[] evaluatedLanes = new long[outputs.size()];
+        long size = size();
+        int samples = (int) Math.min(VALIDATION_SAMPLES, size);
+        Random random = new Random(size);
+
+        for (int sample = 0; sample < samples; sample++) {
+            long row = (sample == 0)? 0
+                       : (sample == 1)? size - 1
+                       : Math.floorMod(random.nextLong(), size);
+            decodeRow(row, digits, inputValues, true);
+            subcircuit.propagate();
+            if (readOutputs(simulated) != 0) {
+                return null;
+            }
+
+            compiled.evaluate(inputValues, evaluated);
+            for (int i = 0; i < outputs.size(); i++) {
+                if (((simulated[i] ^ evaluated[i]) & masks[i]) != 0) {
+                    return null;
+                }
+            }
+
+            if (sliced) {
+                for (int i = 0; i < inputs.size(); i++) {
+                    inputLanes[i] |= (inputValues[i] & 1L) << sample;
+                }
+                for (int i = 0; i < outputs.size(); i++) {
+                    simulatedLanes[i] |= (simulated[i] & 1L) << sample;
+                }
+            }
+        }
+
+        if (sliced) {
+            compiled.evaluateSliced(inputLanes, evaluatedLanes);
+            long used = (samples == 64)? -1L : (1L << samples) - 1;
+            for (int i = 0; i < outputs.size(); i++) {
+                if (((simulatedLanes[i] ^ evaluatedLanes[i]) & used) != 0) {
+                    slicingFailed = true;
+                    break;
+                }
+            }
+        }
+
+        return compiled;
+    }
+
+    // Moves on to the next row like an odometer: bumps the last input,
+    // carrying into earlier ones, and only writes the pins that changed
+    // (if asked to write them at all)
+    private void nextRow(int[] digits, int[] inputValues, boolean write) {
+        for (int i = inputs.size() - 1; i >= 0; i--) {
+            boolean carry = ++digits[i] == domainSize(i);
+            if (carry) {
+                digits[i] = 0;
+            }
+            inputValues[i] = valueAt(i, digits[i]);
+            if (write) {
+                inputs.get(i).write(inputValues[i]);
+            }
+            if (!carry) {
+                break;
+            }
+        }
+    }
+
+    // Fills in the digits and input values for a row, writing them to the
+    // input pins too if asked
+    private void decodeRow(long row, int[] digits, int[] inputValues, boolean write) {
+        long rest = row;
+        for (int i = inputs.size() - 1; i >= 0; i--) {
+            long size = domainSize(i);
+            digits[i] = (int) (rest % size);
+            rest /= size;
+            inputValues[i] = valueAt(i, digits[i]);
+            if (write) {
+                inputs.get(i).write(inputValues[i]);
+            }
+        }
+    }
+
+    // Reads every output pin into actual, returning a bitmask of the
+    // outputs with floating bits
+    private long readOutputs(int[] actual) {
+        long floating = 0;
+        for (int i = 0; i < outputs.size(); i++) {
+            WireValue value = outputs.get(i).getWireValue();
+            if (!value.isValidValue()) {
+                floating |= 1L << i;
+            } else {
+                actual[i] = value.getValue();
+            }
+        }
+        return floating;
+    }
+
+    private int[] outputMasks() {
+        int[] masks = new int[outputs.size()];
+        for (int i = 0; i < outputs.size(); i++) {
+            int bits = outputs.get(i).getPin().getBitSize();
+            masks[i] = (bits >= 32)? -1 : (1 << bits) - 1;
+        }
+        return masks;
+    }
+
+    private long domainSize(int input) {
+        int[] domain = domains.get(input);
+        return (domain != null)? domain.length : 1L << inputs.get(input).getPin().getBitSize();
+    }
+
+    private int valueAt(int input, int digit) {
+        int[] domain = domains.get(input);
+        return (domain != null)? domain[digit] : digit;
+    }
+
+    private static String describePin(BasePin pin, int index, String kind) {
+        String label = pin.getPin().getName();
+        return (label == null || label.isEmpty())? kind + index : label;
+    }
+
+    /**
+     * A row of the truth table where the circuit disagreed with the
+     * reference function.
+     */
+    public static class Mismatch {
+        private int[] inputs;
+        private int[] expected;
+        private int[] actual;
+        private long floating;
+
+        private Mismatch(int[] inputs, int[] expected, int[] actual, long floating) {
+            this.inputs = inputs;
+            this.expected = expected;
+            this.actual = actual;
+            this.floating = floating;
+        }
+
+        /**
+         * @return the value of each input, in declaration order
+         */
+        public int[] getInputs() { return inputs.clone(); }
+
+        /**
+         * @return the expected value of each output, in declaration order
+         */
+        public int[] getExpected() { return expected.clone(); }
+
+        /**
+         * @return the actual value of each output, in declaration order.
+         *         Meaningless for floating outputs
+         */
+        public int[] getActual() { return actual.clone(); }
+
+        /**
+         * @param output the index of an output, in declaration order
+         * @return true if at least one bit of that output was floating
+         */
+        public boolean isFloating(int output) { return (floating & (1L << output)) != 0; }
+    }
+
+    /**
+     * The outcome of checking a truth table: how many rows were checked,
+     * how many did not match, and the first few mismatches.
+     */
+    public static class Result {
+        private TruthTable table;
+        private Engine engine;
+        private long checked;
+        private long mismatchCount;
+        private List<Mismatch> mismatches;
+
+        private Result(TruthTable table, Engine engine) {
+            this.table = table;
+            this.engine = engine;
+            this.mismatches = new ArrayList<>();
+        }
+
+        private void addMismatch(int[] inputs, int[] expected, int[] actual, long floating) {
+            if (mismatches.size() < table.maxReported) {
+                mismatches.add(new Mismatch(inputs.clone(), expected.clone(), actual.clone(), floating));
+            }
+            mismatchCount++;
+        }
+
+        // Appends the results for the rows after the ones in this result
+        private void merge(Result other) {
+            for (Mismatch mismatch : other.mismatches) {
+                if (mismatches.size() < table.maxReported) {
+                    mismatches.add(mismatch);
+                }
+            }
+            checked += other.checked;
+            mismatchCount += other.mismatchCount;
+        }
+
+        /**
+         * @return the engine that actually computed the outputs, which is
+         *         {@link Engine#SIMULATOR} if {@link Engine#COMPILED} was
+         *         asked for but could not be used
+         */
+        public Engine getEngine() { return engine; }
+
+        /**
+         * @return the number of rows checked
+         */
+        public long getChecked() { return checked; }
+
+        /**
+         * @return the number of rows where any output did not match
+         */
+        public long getMismatchCount() { return mismatchCount; }
+
+        /**
+         * @return the first mismatches found, up to {@link
+         *         TruthTable#maxReported(int)} of them
+         */
+        public List<Mismatch> getMismatches() { return Collections.unmodifiableList(mismatches); }
+
+        @Override
+        public String toString() {
+            if (mismatchCount == 0) {
+                return String.format("all %d input combinations match", checked);
+            }
+
+            StringBuilder message = new StringBuilder(String.format(
+                "%d of %d input combinations gave the wrong output. ", mismatchCount, checked));
+            message.append(mismatchCount > mismatches.size()? "First " + mismatches.size() + ":"
+                                                            : "All of them:");
+
+            for (Mismatch mismatch : mismatches) {
+                message.append("\n  ");
+                for (int i = 0; i < table.inputs.size(); i++) {
+                    message.append(String.format("%s%s=0x%x", (i == 0)? "" : ", ",
+                                                 describePin(table.inputs.get(i), i, "input"),
+                                                 mismatch.inputs[i]));
+                }
+                message.append(" →");
+                for (int i = 0; i < table.outputs.size(); i++) {
+                    String actual = mismatch.isFloating(i)? "floating"
+                                                          : String.format("0x%x", mismatch.actual[i]);
+                    message.append(String.format("%s %s: expected 0x%x, got %s", (i == 0)? "" : ",",
+                                                 describePin(table.outputs.get(i), i, "output"),
+                                                 mismatch.expected[i], actual));
+                }
+            }
+
+            return message.toString();
+        }
+    }
+}
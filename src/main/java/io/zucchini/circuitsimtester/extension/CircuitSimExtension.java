@@ -1,7 +1,12 @@
 package io.zucchini.circuitsimtester.extension;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.function.Function;
 import java.util.HashMap;
@@ -11,8 +16,13 @@ import java.util.Optional;
 import java.util.stream.Collectors;
 import java.util.stream.Collectors;
 
+import org.junit.jupiter.api.extension.AfterAllCallback;
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.AfterTestExecutionCallback;
 import org.junit.jupiter.api.extension.BeforeAllCallback;
 import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.ConditionEvaluationResult;
+import org.junit.jupiter.api.extension.ExecutionCondition;
 import org.junit.jupiter.api.extension.Extension;
 import org.junit.jupiter.api.extension.ExtensionContext;
 import org.junit.jupiter.api.TestInstance.Lifecycle;
@@ -29,6 +39,7 @@ import io.zucchini.circuitsimtester.api.Ram;
 import io.zucchini.circuitsimtester.api.Register;
 import io.zucchini.circuitsimtester.api.Restrictor;
 import io.zucchini.circuitsimtester.api.Rom;
+import io.zucchini.circuitsimtester.api.SimulationMetrics;
 import io.zucchini.circuitsimtester.api.Subcircuit;
 import io.zucchini.circuitsimtester.api.SubcircuitComponent;
 import io.zucchini.circuitsimtester.api.SubcircuitTest;
@@ -46,10 +57,54 @@ import static io.zucchini.circuitsimtester.api.SubcircuitComponent.Type.TUNNEL;
  *
  * @see <a href="https://github.com/zucchini/circuitsim-tester/blob/master/README.md">The README with examples</a>
  */
-public class CircuitSimExtension implements Extension, BeforeAllCallback, BeforeEachCallback {
+public class CircuitSimExtension implements Extension, BeforeAllCallback, BeforeEachCallback,
+                                            AfterTestExecutionCallback, AfterEachCallback,
+                                            AfterAllCallback, ExecutionCondition {
+    /**
+     * JUnit configuration parameter holding the directory against which
+     * relative {@link SubcircuitTest#file()} paths are resolved. Set by the
+     * launcher when grading many submissions in one JVM; when absent, paths
+     * are relative to the working directory like before.
+     */
+    public static final String SUBMISSION_DIRECTORY_PARAMETER = "circuitsimtester.submissionDirectory";
+
+    /**
+     * Report entry keys for the {@link SimulationMetrics} published for
+     * every test class (load time) and every test (the rest). Values are
+     * decimal {@code long}s. The launcher collects them into its results.
+     */
+    public static final String LOAD_NANOS_REPORT_KEY = "circuitsimtester.loadNanos";
+    public static final String PROPAGATIONS_REPORT_KEY = "circuitsimtester.propagations";
+    public static final String CYCLES_REPORT_KEY = "circuitsimtester.cycles";
+    public static final String SIMULATION_NANOS_REPORT_KEY = "circuitsimtester.simulationNanos";
+
+    /**
+     * JUnit configuration parameter holding the {@link
+     * SubcircuitTest#failFastAfter()} to use for test classes that do not
+     * set one. Set by the launcher for {@code --fail-fast N}.
+     */
+    public static final String FAIL_FAST_PARAMETER = "circuitsimtester.failFastAfter";
+
+    /**
+     * JUnit configuration parameter holding the {@link
+     * SubcircuitTest#timeoutMillis()} to use for test classes that do not
+     * set one. Set by the launcher for {@code --timeout MS}.
+     */
+    public static final String TIMEOUT_PARAMETER = "circuitsimtester.timeoutMillis";
+
+    /**
+     * Every reason given for skipping a test because of {@link
+     * SubcircuitTest#failFastAfter()} starts with this, so that the
+     * launcher can count those tests as failed.
+     */
+    public static final String FAIL_FAST_REASON_PREFIX = "Skipped after failing ";
+
     private boolean resetSimulationBetween;
     private Subcircuit subcircuit;
     private List<FieldInjection> fieldInjections;
+    private List<MemoryPreload> memoryPreloads;
+    private int failFastAfter;
+    private Map<Method, Integer> failureCounts;
 
     @Override
     public void beforeAll(ExtensionContext context) throws Exception {
@@ -62,8 +117,19 @@ public class CircuitSimExtension implements Extension, BeforeAllCallback, Before
         }
 
         resetSimulationBetween = subcircuitAnnotation.resetSimulationBetween();
-        subcircuit = Subcircuit.fromPath(subcircuitAnnotation.file(),
+        subcircuit = Subcircuit.fromPath(resolveCircuitFile(context, subcircuitAnnotation.file()),
                                          subcircuitAnnotation.subcircuit());
+        context.publishReportEntry(LOAD_NANOS_REPORT_KEY,
+                                   Long.toString(subcircuit.getMetrics().getLoadNanos()));
+        long timeoutMillis = (subcircuitAnnotation.timeoutMillis() > 0)
+                             ? subcircuitAnnotation.timeoutMillis()
+                             : context.getConfigurationParameter(TIMEOUT_PARAMETER).map(Long::parseLong).orElse(0L);
+        subcircuit.setExecutionBudget(subcircuitAnnotation.maxPropagations(), timeoutMillis);
+        subcircuit.setOscillationLimit(subcircuitAnnotation.oscillationLimit());
+        failFastAfter = (subcircuitAnnotation.failFastAfter() > 0)
+                        ? subcircuitAnnotation.failFastAfter()
+                        : context.getConfigurationParameter(FAIL_FAST_PARAMETER).map(Integer::parseInt).orElse(0);
+        failureCounts = new HashMap<>();
 
         if (subcircuitAnnotation.verifyInputPinCount()) {
             long desiredInputPinCount = Arrays.stream(testClass.getDeclaredFields())
@@ -84,6 +150,7 @@ public class CircuitSimExtension implements Extension, BeforeAllCallback, Before
             runRestrictor(subcircuit, restrictor);
         }
 
+        memoryPreloads = new ArrayList<>();
         fieldInjections = generateFieldInjections(testClass);
 
         // Conservatively assume PER_METHOD if lifecycle is MIA
@@ -100,6 +167,14 @@ public class CircuitSimExtension implements Extension, BeforeAllCallback, Before
             subcircuit.resetSimulation();
         }
 
+        for (MemoryPreload preload : memoryPreloads) {
+            preload.load();
+        }
+
+        // Each test gets its own execution budget, and its own metrics
+        subcircuit.restartExecutionBudget();
+        subcircuit.resetMetrics();
+
         // Conservatively assume PER_METHOD if lifecycle is MIA
         if (!context.getTestInstanceLifecycle().isPresent()
                 || context.getTestInstanceLifecycle().get() == Lifecycle.PER_METHOD) {
@@ -107,6 +182,58 @@ public class CircuitSimExtension implements Extension, BeforeAllCallback, Before
         }
     }
 
+    @Override
+    public ConditionEvaluationResult evaluateExecutionCondition(ExtensionContext context) {
+        // Runs for the test class too, before beforeAll()
+        if (failFastAfter <= 0 || !context.getTestMethod().isPresent()) {
+            return ConditionEvaluationResult.enabled(null);
+        }
+
+        int failures = failureCounts.getOrDefault(context.getTestMethod().get(), 0);
+        if (failures >= failFastAfter) {
+            return ConditionEvaluationResult.disabled(String.format(
+                "%s%d times already", FAIL_FAST_REASON_PREFIX, failures));
+        } else {
+            return ConditionEvaluationResult.enabled(null);
+        }
+    }
+
+    @Override
+    public void afterTestExecution(ExtensionContext context) throws Exception {
+        if (failFastAfter > 0 && context.getExecutionException().isPresent()) {
+            failureCounts.merge(context.getRequiredTestMethod(), 1, Integer::sum);
+        }
+    }
+
+    @Override
+    public void afterEach(ExtensionContext context) throws Exception {
+        SimulationMetrics metrics = subcircuit.getMetrics();
+        Map<String, String> entries = new HashMap<>();
+        entries.put(PROPAGATIONS_REPORT_KEY, Long.toString(metrics.getPropagations()));
+        entries.put(CYCLES_REPORT_KEY, Long.toString(metrics.getCycles()));
+        entries.put(SIMULATION_NANOS_REPORT_KEY, Long.toString(metrics.getSimulationNanos()));
+        context.publishReportEntry(entries);
+    }
+
+    @Override
+    public void afterAll(ExtensionContext context) throws Exception {
+        // Let the next test class on this file reuse the loaded circuit.
+        // beforeAll() may have failed before loading anything
+        if (subcircuit != null) {
+            subcircuit.close();
+        }
+    }
+
+    private String resolveCircuitFile(ExtensionContext context, String path) {
+        Optional<String> submissionDirectory = context.getConfigurationParameter(SUBMISSION_DIRECTORY_PARAMETER);
+
+        if (!submissionDirectory.isPresent() || new File(path).isAbsolute()) {
+            return path;
+        } else {
+            return new File(submissionDirectory.get(), path).getPath();
+        }
+    }
+
     private void injectFields(ExtensionContext context) throws IllegalAccessException {
         // Do simple dependency injection
         for (FieldInjection fieldInjection : fieldInjections) {
@@ -151,13 +278,20 @@ public class CircuitSimExtension implements Extension, BeforeAllCallback, Before
         fieldInjectors.put(Clock.class,        this::generatePulserFieldInjection);
         fieldInjectors.put(Button.class,       this::generatePulserFieldInjection);
 
+        List<Field> fields = Arrays.stream(testClass.getDeclaredFields())
+                                   .filter(field -> field.isAnnotationPresent(SubcircuitComponent.class))
+                                   .collect(Collectors.toList());
+
+        for (Field field : fields) {
+            checkPreload(field);
+        }
+
         // TODO: Detect duplicate pins (`Pin a' and `Pin A' are distinct
         //       fields in Java but not here). Easy solution: sort the
         //       stream by canonicalName(field.getName()) and iterate
         //       over the resulting List, comparing each with the
         //       next
-        return Arrays.stream(testClass.getDeclaredFields())
-                     .filter(field -> field.isAnnotationPresent(SubcircuitComponent.class))
+        return fields.stream()
                      .map(field -> Optional.ofNullable(fieldInjectors.get(field.getType()))
                                            .orElseThrow(() -> new IllegalArgumentException(
                                                "Test class field " + field.getName() + " in " +
@@ -251,9 +385,25 @@ public class CircuitSimExtension implements Extension, BeforeAllCallback, Before
         Subcircuit.MemoryType type = field.getType().equals(Ram.class)? RAM : ROM;
         BaseMemory wrapper = subcircuit.lookupMemory(label, componentAnnotation.bits(),
                                                      componentAnnotation.recursiveSearch(), type);
+
+        if (!componentAnnotation.preload().isEmpty()) {
+            memoryPreloads.add(new MemoryPreload(wrapper, componentAnnotation.preload(),
+                                                 componentAnnotation.preloadFormat()));
+        }
+
         return new FieldInjection(field, wrapper);
     }
 
+    private void checkPreload(Field field) {
+        SubcircuitComponent componentAnnotation = field.getDeclaredAnnotation(SubcircuitComponent.class);
+        boolean isMemory = field.getType().equals(Ram.class) || field.getType().equals(Rom.class);
+
+        if (!componentAnnotation.preload().isEmpty() && !isMemory) {
+            throw new IllegalArgumentException(field.getName() +
+                    " is not a RAM/ROM, so @SubcircuitComponent should not have the preload parameter");
+        }
+    }
+
     private FieldInjection generatePulserFieldInjection(Field field) {
         SubcircuitComponent componentAnnotation = field.getDeclaredAnnotation(SubcircuitComponent.class);
 
@@ -273,6 +423,22 @@ public class CircuitSimExtension implements Extension, BeforeAllCallback, Before
         return new FieldInjection(field, mock);
     }
 
+    private static class MemoryPreload {
+        private BaseMemory memory;
+        private String path;
+        private BaseMemory.ImageFormat format;
+
+        public MemoryPreload(BaseMemory memory, String path, BaseMemory.ImageFormat format) {
+            this.memory = memory;
+            this.path = path;
+            this.format = format;
+        }
+
+        public void load() throws IOException {
+            memory.preload(Paths.get(path), format);
+        }
+    }
+
     private static class FieldInjection {
         private Field field;
         private Object valueToInject;
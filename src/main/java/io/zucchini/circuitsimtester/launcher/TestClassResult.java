@@ -3,7 +3,9 @@ package io.zucchini.circuitsimtester.launcher;
 import static org.junit.platform.engine.TestExecutionResult.Status.SUCCESSFUL;
 
 import java.util.Collection;
+import java.util.SortedMap;
 import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.TreeSet;
 
 import org.junit.platform.engine.TestExecutionResult;
@@ -14,23 +16,38 @@ public class TestClassResult implements Comparable<TestClassResult> {
     private TestIdentifier id;
     private ClassSource source;
     private TestExecutionResult result;
+    private TestMetrics metrics;
     private SortedSet<TestMethodResult> methodResults;
+    private SortedMap<String, TestMethodSummary> methodSummaries;
     private int numFailed;
 
     public TestClassResult(TestIdentifier id,
                            ClassSource source,
                            TestExecutionResult result) {
+        this(id, source, result, null);
+    }
+
+    public TestClassResult(TestIdentifier id,
+                           ClassSource source,
+                           TestExecutionResult result,
+                           TestMetrics metrics) {
         this.id = id;
         this.source = source;
         this.result = result;
+        this.metrics = metrics;
         this.methodResults = new TreeSet<>();
+        this.methodSummaries = new TreeMap<>();
         this.numFailed = 0;
     }
 
     public TestIdentifier getId() { return id; }
     public ClassSource getSource() { return source; }
     public TestExecutionResult getResult() { return result; }
+    // null if the listener did not measure this
+    public TestMetrics getMetrics() { return metrics; }
     public Collection<TestMethodResult> getMethodResults() { return methodResults; }
+    // Sorted by method name. Empty unless TestListener summarized methods
+    public Collection<TestMethodSummary> getMethodSummaries() { return methodSummaries.values(); }
 
     @Override
     public int compareTo(TestClassResult other) {
@@ -45,6 +62,11 @@ public class TestClassResult implements Comparable<TestClassResult> {
         return methodResults.add(methodResult);
     }
 
+    public void addMethodSummary(TestMethodSummary methodSummary) {
+        numFailed += methodSummary.getFailed();
+        methodSummaries.put(methodSummary.getMethodName(), methodSummary);
+    }
+
     public int getNumFailed() {
         return numFailed;
     }
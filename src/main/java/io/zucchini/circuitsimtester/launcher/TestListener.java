@@ -1,29 +1,73 @@
 package io.zucchini.circuitsimtester.launcher;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
 
 import org.junit.platform.engine.TestExecutionResult;
 import org.junit.platform.engine.TestSource;
+import org.junit.platform.engine.reporting.ReportEntry;
 import org.junit.platform.engine.support.descriptor.ClassSource;
 import org.junit.platform.engine.support.descriptor.MethodSource;
 import org.junit.platform.launcher.TestExecutionListener;
 import org.junit.platform.launcher.TestIdentifier;
 
+import io.zucchini.circuitsimtester.extension.CircuitSimExtension;
+
+/**
+ * Collects the results of a JUnit run into a {@link TestClassResult} per
+ * test class. By default every {@link TestMethodResult} is kept until
+ * {@link #harvest()}; with {@link #TestListener(int)}, each one is instead
+ * added to a {@link TestMethodSummary} as soon as it finishes and then
+ * dropped, unless it is one of the first few failures of its method.
+ */
 public class TestListener implements TestExecutionListener {
     private SortedMap<String, TestClassResult> classResults;
     private List<TestMethodResult> methodResults;
+    private TestMetrics.Recorder metricsRecorder;
+    // Only when summarizing. Class name -> method name -> summary
+    private int maxFailuresPerMethod;
+    private Map<String, Map<String, TestMethodSummary>> methodSummaries;
 
     public TestListener() {
         classResults = new TreeMap<>();
         methodResults = new LinkedList<>();
+        metricsRecorder = new TestMetrics.Recorder();
+    }
+
+    /**
+     * Creates a listener which summarizes test methods as they finish, so
+     * that the results of 100,000 parameterized invocations take no more
+     * memory than the results of one. {@link TestClassResult}s from
+     * {@link #harvest()} then have {@link
+     * TestClassResult#getMethodSummaries()} but no {@link
+     * TestClassResult#getMethodResults()}.
+     *
+     * @param maxFailuresPerMethod how many failures to keep for each test
+     *                             method. The rest are only counted
+     */
+    public TestListener(int maxFailuresPerMethod) {
+        this();
+        this.maxFailuresPerMethod = maxFailuresPerMethod;
+        this.methodSummaries = new HashMap<>();
+    }
+
+    public void executionStarted(TestIdentifier testIdentifier) {
+        metricsRecorder.started(testIdentifier);
+    }
+
+    public void reportingEntryPublished(TestIdentifier testIdentifier, ReportEntry entry) {
+        metricsRecorder.reported(testIdentifier, entry);
     }
 
     public void executionFinished(TestIdentifier testIdentifier,
                                   TestExecutionResult testExecutionResult) {
+        TestMetrics metrics = metricsRecorder.finished(testIdentifier);
+
         if (!testIdentifier.getSource().isPresent()) {
             // The engine doesn't have a source, so this is probably
             // the engine node, so skip it
@@ -34,13 +78,13 @@ public class TestListener implements TestExecutionListener {
         if (source instanceof ClassSource) {
             ClassSource classSource = (ClassSource) source;
             TestClassResult tcr = new TestClassResult(
-                testIdentifier, classSource, testExecutionResult);
+                testIdentifier, classSource, testExecutionResult, metrics);
             classResults.put(classSource.getClassName(), tcr);
         } else if (source instanceof MethodSource) {
             // Ignore template tests (@ParameterizedTests)
             if (testIdentifier.isTest()) {
-                methodResults.add(new TestMethodResult(
-                    testIdentifier, (MethodSource) source, testExecutionResult));
+                addMethodResult(new TestMethodResult(
+                    testIdentifier, (MethodSource) source, testExecutionResult, metrics));
             }
         } else {
             throw new IllegalArgumentException(String.format(
@@ -49,6 +93,45 @@ public class TestListener implements TestExecutionListener {
         }
     }
 
+    public void executionSkipped(TestIdentifier testIdentifier, String reason) {
+        TestExecutionResult failed = failFastResult(reason);
+
+        if (failed != null && testIdentifier.isTest()
+                && testIdentifier.getSource().orElse(null) instanceof MethodSource) {
+            addMethodResult(new TestMethodResult(
+                testIdentifier, (MethodSource) testIdentifier.getSource().get(), failed, null));
+        }
+    }
+
+    /**
+     * Tests skipped by {@link CircuitSimExtension} because the same test
+     * method already failed too often count as failed, so that skipping
+     * them does not raise anyone's grade. Other skipped tests, like
+     * {@code @Disabled} ones, do not count at all.
+     *
+     * @param reason why JUnit skipped a test
+     * @return a failed result for the test, or null if it should not count
+     */
+    static TestExecutionResult failFastResult(String reason) {
+        if (reason == null || !reason.startsWith(CircuitSimExtension.FAIL_FAST_REASON_PREFIX)) {
+            return null;
+        }
+
+        return TestExecutionResult.failed(new AssertionError(reason));
+    }
+
+    private void addMethodResult(TestMethodResult methodResult) {
+        if (methodSummaries == null) {
+            methodResults.add(methodResult);
+        } else {
+            MethodSource methodSource = methodResult.getSource();
+            methodSummaries.computeIfAbsent(methodSource.getClassName(), name -> new HashMap<>())
+                           .computeIfAbsent(methodSource.getMethodName(),
+                                            name -> new TestMethodSummary(name, maxFailuresPerMethod))
+                           .add(methodResult);
+        }
+    }
+
     // "Lord, thank you for this bountiful harvest" -Trevor Lusk
     public Collection<TestClassResult> harvest() {
         for (TestMethodResult methodResult : methodResults) {
@@ -58,6 +141,16 @@ public class TestListener implements TestExecutionListener {
 
         methodResults.clear();
 
+        if (methodSummaries != null) {
+            for (Map.Entry<String, Map<String, TestMethodSummary>> entry : methodSummaries.entrySet()) {
+                for (TestMethodSummary summary : entry.getValue().values()) {
+                    classResults.get(entry.getKey()).addMethodSummary(summary);
+                }
+            }
+
+            methodSummaries.clear();
+        }
+
         return classResults.values();
     }
 }
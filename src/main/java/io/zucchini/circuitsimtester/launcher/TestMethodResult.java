@@ -8,18 +8,29 @@ public class TestMethodResult implements Comparable<TestMethodResult> {
     private TestIdentifier id;
     private MethodSource source;
     private TestExecutionResult result;
+    private TestMetrics metrics;
 
     public TestMethodResult(TestIdentifier id,
                             MethodSource source,
                             TestExecutionResult result) {
+        this(id, source, result, null);
+    }
+
+    public TestMethodResult(TestIdentifier id,
+                            MethodSource source,
+                            TestExecutionResult result,
+                            TestMetrics metrics) {
         this.id = id;
         this.source = source;
         this.result = result;
+        this.metrics = metrics;
     }
 
     public TestIdentifier getId() { return id; }
     public MethodSource getSource() { return source; }
     public TestExecutionResult getResult() { return result; }
+    // null if the listener did not measure this
+    public TestMetrics getMetrics() { return metrics; }
 
     @Override
     public int compareTo(TestMethodResult other) {
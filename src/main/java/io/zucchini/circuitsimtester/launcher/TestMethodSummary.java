@@ -0,0 +1,64 @@
+package io.zucchini.circuitsimtester.launcher;
+
+import static org.junit.platform.engine.TestExecutionResult.Status.SUCCESSFUL;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Everything Zucchini needs to know about one test method, however many
+ * times it ran: how many invocations ran and failed, the first few
+ * failures, and their metrics added up. Unlike keeping every {@link
+ * TestMethodResult}, this stays small for a {@code @ParameterizedTest}
+ * with thousands of invocations.
+ */
+public class TestMethodSummary implements Comparable<TestMethodSummary> {
+    private String methodName;
+    private int maxFailures;
+    private int total;
+    private int failed;
+    private List<TestMethodResult> failures;
+    private long wallNanos;
+    private long simulationNanos;
+    private long propagations;
+    private long cycles;
+
+    public TestMethodSummary(String methodName, int maxFailures) {
+        this.methodName = methodName;
+        this.maxFailures = maxFailures;
+        this.total = 0;
+        this.failed = 0;
+        this.failures = new ArrayList<>();
+    }
+
+    public String getMethodName() { return methodName; }
+    public int getTotal() { return total; }
+    public int getFailed() { return failed; }
+    // At most maxFailures of them, in the order they finished
+    public List<TestMethodResult> getFailures() { return Collections.unmodifiableList(failures); }
+    public long getWallNanos() { return wallNanos; }
+    public long getSimulationNanos() { return simulationNanos; }
+    public long getPropagations() { return propagations; }
+    public long getCycles() { return cycles; }
+
+    public void add(TestMethodResult result) {
+        total++;
+        if (result.getResult().getStatus() != SUCCESSFUL && ++failed <= maxFailures) {
+            failures.add(result);
+        }
+
+        TestMetrics metrics = result.getMetrics();
+        if (metrics != null) {
+            wallNanos += metrics.getWallNanos();
+            simulationNanos += metrics.getSimulationNanos();
+            propagations += metrics.getPropagations();
+            cycles += metrics.getCycles();
+        }
+    }
+
+    @Override
+    public int compareTo(TestMethodSummary other) {
+        return methodName.compareTo(other.methodName);
+    }
+}
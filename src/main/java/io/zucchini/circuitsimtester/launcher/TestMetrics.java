@@ -0,0 +1,91 @@
+package io.zucchini.circuitsimtester.launcher;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.platform.engine.reporting.ReportEntry;
+import org.junit.platform.launcher.TestIdentifier;
+
+import io.zucchini.circuitsimtester.extension.CircuitSimExtension;
+
+/**
+ * How expensive a test (or test class) was: its wall-clock time, measured
+ * by {@link TestListener}, plus whatever metrics {@link
+ * CircuitSimExtension} published for it. Metrics a test did not publish,
+ * like the load time of a single test, are 0.
+ */
+public class TestMetrics {
+    private long wallNanos;
+    private long loadNanos;
+    private long propagations;
+    private long cycles;
+    private long simulationNanos;
+
+    public TestMetrics(long wallNanos, Map<String, String> reportEntries) {
+        this.wallNanos = wallNanos;
+        this.loadNanos = parse(reportEntries, CircuitSimExtension.LOAD_NANOS_REPORT_KEY);
+        this.propagations = parse(reportEntries, CircuitSimExtension.PROPAGATIONS_REPORT_KEY);
+        this.cycles = parse(reportEntries, CircuitSimExtension.CYCLES_REPORT_KEY);
+        this.simulationNanos = parse(reportEntries, CircuitSimExtension.SIMULATION_NANOS_REPORT_KEY);
+    }
+
+    public long getWallNanos() { return wallNanos; }
+    public long getLoadNanos() { return loadNanos; }
+    public long getPropagations() { return propagations; }
+    public long getCycles() { return cycles; }
+    public long getSimulationNanos() { return simulationNanos; }
+
+    @Override
+    public String toString() {
+        return String.format("%.3f ms, %d propagations, %d cycles",
+                             wallNanos / 1e6, propagations, cycles);
+    }
+
+    /**
+     * Measures every test and test class as a {@code
+     * TestExecutionListener} sees it run. Only remembers tests still
+     * running.
+     */
+    static class Recorder {
+        // Keyed by unique ID
+        private Map<String, Long> startNanos;
+        private Map<String, Map<String, String>> reportEntries;
+
+        Recorder() {
+            startNanos = new HashMap<>();
+            reportEntries = new HashMap<>();
+        }
+
+        void started(TestIdentifier testIdentifier) {
+            startNanos.put(testIdentifier.getUniqueId(), System.nanoTime());
+        }
+
+        void reported(TestIdentifier testIdentifier, ReportEntry entry) {
+            reportEntries.computeIfAbsent(testIdentifier.getUniqueId(), id -> new HashMap<>())
+                         .putAll(entry.getKeyValuePairs());
+        }
+
+        TestMetrics finished(TestIdentifier testIdentifier) {
+            Long start = startNanos.remove(testIdentifier.getUniqueId());
+            long wallNanos = (start == null)? 0 : System.nanoTime() - start;
+            Map<String, String> entries = reportEntries.remove(testIdentifier.getUniqueId());
+
+            return new TestMetrics(wallNanos, (entries == null)? Collections.emptyMap() : entries);
+        }
+    }
+
+    private static long parse(Map<String, String> reportEntries, String key) {
+        String value = reportEntries.get(key);
+        if (value == null) {
+            return 0;
+        }
+
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException err) {
+            // Someone else's report entry with the same key, somehow
+            return 0;
+        }
+    }
+}
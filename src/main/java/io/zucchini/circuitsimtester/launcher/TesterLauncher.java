@@ -3,10 +3,34 @@ package io.zucchini.circuitsimtester.launcher;
 import static org.junit.platform.engine.TestExecutionResult.Status.SUCCESSFUL;
 import static org.junit.platform.engine.discovery.DiscoverySelectors.selectClass;
 import static org.junit.platform.engine.discovery.DiscoverySelectors.selectPackage;
-
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javafx.application.Platform;
 
@@ -17,26 +41,94 @@ import org.junit.platform.launcher.LauncherDiscoveryRequest;
 import org.junit.platform.launcher.core.LauncherFactory;
 import org.junit.platform.launcher.core.LauncherDiscoveryRequestBuilder;
 
+import io.zucchini.circuitsimtester.extension.CircuitSimExtension;
+
 public class TesterLauncher {
     private static final int MAX_FAILURES = 8;
+    private static final int SLOWEST_TESTS_SHOWN = 5;
+    private static final String BATCH_RESULTS_FILENAME = "circuitsim-tester-results.json";
     private String pkg;
+    // JUnit launchers are not documented to be thread-safe, so give every
+    // worker thread its own
+    private ThreadLocal<Launcher> launchers;
     private SortedSet<TestClassResult> results;
     private PrintStream out, err;
+    private boolean metrics;
+    private boolean compact;
+    private int failFastAfter;
+    private int timeoutMillis;
 
     public static void launch(String pkg, String[] args) {
+        List<String> argList = new ArrayList<>(Arrays.asList(args));
+        boolean metrics = argList.remove("--metrics");
+        boolean compact = argList.remove("--compact");
+        Integer failFastAfter = removeNumberOption(argList, "--fail-fast");
+        Integer timeoutMillis = removeNumberOption(argList, "--timeout");
+        Integer jobs = removeNumberOption(argList, "--jobs");
+        args = argList.toArray(new String[0]);
+
         boolean verbose = false;
         boolean student = args.length <= 1 && (args.length == 0 || (verbose = args[0].equals("--verbose")));
         boolean zucchini = args.length == 2 && args[0].equals("--zucchini");
+        boolean batch = args.length == 2 && args[0].equals("--batch");
+        boolean serve = (args.length == 1 || args.length == 3 && args[1].equals("--port"))
+                        && args[0].equals("--serve");
+        // Negative means read requests from stdin instead
+        int port = -1;
+
+        if (serve && args.length == 3) {
+            try {
+                port = Integer.parseInt(args[2]);
+            } catch (NumberFormatException err) {
+                port = -1;
+            }
+            serve = port >= 0 && port <= 65535;
+        }
 
-        if (!student && !zucchini) {
+        if (!student && !zucchini && !batch && !serve
+                || failFastAfter != null && failFastAfter < 0
+                || timeoutMillis != null && timeoutMillis < 0
+                || jobs != null && (jobs < 1 || !batch && (!serve || port < 0))) {
             System.err.println("usage: java -jar tester.jar [--verbose]");
-            System.err.println("           → run student tests (optionally, with verbose output)");
+            System.err.println("           → run student tests (optionally, with verbose output, which");
+            System.err.println("             includes the slowest tests)");
             System.err.println("       java -jar tester.jar --zucchini SomeTestClass");
             System.err.println("           → run and generate zucchini json for test SomeTestClass");
+            System.err.println("       java -jar tester.jar --batch manifest.txt [--jobs N]");
+            System.err.println("           → grade every submission listed in manifest.txt, writing zucchini");
+            System.err.println("             json to " + BATCH_RESULTS_FILENAME + " in each submission directory");
+            System.err.println("             (optionally, running N test classes at a time)");
+            System.err.println("       java -jar tester.jar --serve [--port N [--jobs N]]");
+            System.err.println("           → keep running, and grade each line read from stdin (or from");
+            System.err.println("             connections to port N on localhost) like a line of a batch");
+            System.err.println("             manifest, answering with a line of zucchini json");
+            System.err.println("             (optionally, serving N connections at a time)");
+            System.err.println("       Add --metrics to any of the above to include propagation counts,");
+            System.err.println("       cycles, and timings for every test in the output, and --compact to");
+            System.err.println("       print json on one line. Add --fail-fast N to stop running a test");
+            System.err.println("       method after it fails N times, and --timeout MS to fail any test that");
+            System.err.println("       runs for more than MS milliseconds of wall-clock time, counting the");
+            System.err.println("       test's own code as well as simulation (by default, no limit)");
+            System.exit(1);
+            return;
+        }
+
+        if (failFastAfter != null && failFastAfter == 0) {
+            System.err.println("--fail-fast needs a positive number of failures");
             System.exit(1);
             return;
         }
 
+        if (failFastAfter == null) {
+            failFastAfter = 0;
+        }
+        if (timeoutMillis == null) {
+            timeoutMillis = 0;
+        }
+        if (jobs == null) {
+            jobs = 1;
+        }
+
         int exitCode;
         // This extracts the architecture+OS-specific JavaFX native libraries.
         // CircuitSim does this when starting itself up, but we are bypassing
@@ -44,11 +136,20 @@ public class TesterLauncher {
         try (NativeLibraryExtractor extractor = new NativeLibraryExtractor()) {
             extractor.extractNativeLibs();
 
+            // Reuse one launcher (and one warm JVM) for everything
+            TesterLauncher launcher = new TesterLauncher(
+                    pkg, System.out, System.err, metrics, compact, failFastAfter, timeoutMillis);
+
             if (student) {
-                exitCode = studentRun(pkg, verbose);
+                exitCode = studentRun(launcher, verbose, metrics);
+            } else if (batch) {
+                String manifestPath = args[1];
+                exitCode = batchRun(launcher, manifestPath, jobs);
+            } else if (serve) {
+                exitCode = serveRun(launcher, port, jobs);
             } else { // zucchini
                 String testClassName = args[1];
-                exitCode = zucchiniRun(pkg, testClassName);
+                exitCode = zucchiniRun(launcher, testClassName);
             }
 
             // Exit JavaFX, hopefully to stop the grader from hanging
@@ -58,29 +159,89 @@ public class TesterLauncher {
         System.exit(exitCode);
     }
 
-    private static int studentRun(String testPackage, boolean verbose) {
-        TesterLauncher launcher = new TesterLauncher(
-                testPackage, System.out, System.err);
+    // Removes `option N' from the arguments and returns N, or null if the
+    // option is not there, or -1 if N is missing or not a number
+    private static Integer removeNumberOption(List<String> argList, String option) {
+        int index = argList.indexOf(option);
+        if (index < 0) {
+            return null;
+        }
+
+        try {
+            int value = Integer.parseInt(argList.get(index + 1));
+            argList.subList(index, index + 2).clear();
+            return value;
+        } catch (IndexOutOfBoundsException | NumberFormatException err) {
+            return -1;
+        }
+    }
+
+    private static int studentRun(TesterLauncher launcher, boolean verbose, boolean metrics) {
         launcher.runAllTests();
         launcher.printStudentSummary(verbose);
+        if (verbose || metrics) {
+            launcher.printMetricsSummary();
+        }
         return launcher.wasSuccessful()? 0 : 1;
     }
 
-    private static int zucchiniRun(String testPackage, String testClassName) {
-        TesterLauncher launcher = new TesterLauncher(
-                testPackage, System.out, System.err);
-        launcher.runTests(testClassName);
-        launcher.printZucchiniJsonSummary();
+    private static int zucchiniRun(TesterLauncher launcher, String testClassName) {
+        launcher.printZucchiniJson(testClassName);
 
         // Don't confuse zucchini backend by returning nonzero exit
         // code, even if some tests fail
         return 0;
     }
 
-    private TesterLauncher(String pkg, PrintStream out, PrintStream err) {
+    private static int batchRun(TesterLauncher launcher, String manifestPath, int jobs) {
+        List<BatchSubmission> submissions;
+        try {
+            submissions = BatchSubmission.parseManifest(new File(manifestPath));
+        } catch (IOException err) {
+            System.err.printf("could not read batch manifest `%s': %s%n", manifestPath, err.getMessage());
+            return 1;
+        }
+
+        launcher.gradeSubmissions(submissions, jobs);
+
+        // Like zucchiniRun(), failing tests are not a failure of the batch
+        return 0;
+    }
+
+    private static int serveRun(TesterLauncher launcher, int port, int jobs) {
+        // Keep stdout for replies only, since a stray print from a test,
+        // CircuitSim, or anything else in this JVM would corrupt the stream
+        // of replies. Send all of that to stderr instead
+        PrintStream replies = System.out;
+        System.setOut(System.err);
+
+        try {
+            if (port < 0) {
+                launcher.serveRequests(new BufferedReader(new InputStreamReader(System.in, UTF_8)),
+                                       new OutputStreamWriter(replies, UTF_8));
+            } else {
+                launcher.serveConnections(port, jobs);
+            }
+        } catch (IOException err) {
+            System.err.printf("could not serve grading requests: %s%n", err.getMessage());
+            return 1;
+        } finally {
+            System.setOut(replies);
+        }
+
+        return 0;
+    }
+
+    private TesterLauncher(String pkg, PrintStream out, PrintStream err,
+                           boolean metrics, boolean compact, int failFastAfter, int timeoutMillis) {
         this.pkg = pkg;
         this.out = out;
         this.err = err;
+        this.metrics = metrics;
+        this.compact = compact;
+        this.failFastAfter = failFastAfter;
+        this.timeoutMillis = timeoutMillis;
+        this.launchers = ThreadLocal.withInitial(LauncherFactory::create);
         this.results = new TreeSet<>();
     }
 
@@ -89,10 +250,171 @@ public class TesterLauncher {
     }
 
     private void runTests(String testClassName) {
-        Launcher launcher = LauncherFactory.create();
-        TestListener testListener = new TestListener();
-        launcher.execute(buildDiscoveryRequest(testClassName), testListener);
-        results.addAll(testListener.harvest());
+        results.addAll(runTests(testClassName, null));
+    }
+
+    private Collection<TestClassResult> runTests(String testClassName, File submissionDirectory) {
+        // Summarize as we go rather than holding onto every invocation of
+        // every parameterized test
+        TestListener testListener = new TestListener(MAX_FAILURES);
+        launchers.get().execute(buildDiscoveryRequest(testClassName, submissionDirectory), testListener);
+        return testListener.harvest();
+    }
+
+    private void printZucchiniJson(String testClassName) {
+        TestClassResult classResult = runTestClass(testClassName, null);
+
+        if (classResult == null) {
+            newZucchiniJson().printDidNotRunAsJson(testClassName, out);
+        } else {
+            newZucchiniJson().printResultsAsJson(classResult, out);
+        }
+    }
+
+    private ZucchiniJson newZucchiniJson() {
+        return new ZucchiniJson(MAX_FAILURES, metrics, compact);
+    }
+
+    private TestClassResult runTestClass(String testClassName, File submissionDirectory) {
+        // Ran one class, so there should be at most one TestClassResult
+        return runTests(testClassName, submissionDirectory).stream().findFirst().orElse(null);
+    }
+
+    private void gradeSubmissions(List<BatchSubmission> submissions, int jobs) {
+        // Every test class builds its own CircuitSim instance in
+        // CircuitSimExtension, so test classes are independent of each other
+        // and can run on any worker
+        ExecutorService pool = Executors.newFixedThreadPool(jobs);
+
+        try {
+            List<Map<String, Future<TestClassResult>>> pending = new ArrayList<>();
+            for (BatchSubmission submission : submissions) {
+                Map<String, Future<TestClassResult>> futures = new LinkedHashMap<>();
+                for (String testClassName : submission.getTestClassNames()) {
+                    futures.put(testClassName, pool.submit(
+                        () -> runTestClass(testClassName, submission.getDirectory())));
+                }
+                pending.add(futures);
+            }
+
+            // Collect in manifest order so output does not depend on
+            // scheduling
+            for (int i = 0; i < submissions.size(); i++) {
+                gradeSubmission(submissions.get(i), pending.get(i));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void gradeSubmission(BatchSubmission submission,
+                                 Map<String, Future<TestClassResult>> futures) {
+        // Keyed by the test class name as written in the manifest
+        Map<String, TestClassResult> classResults = new LinkedHashMap<>();
+
+        for (Map.Entry<String, Future<TestClassResult>> future : futures.entrySet()) {
+            TestClassResult classResult;
+            try {
+                classResult = future.getValue().get();
+            } catch (InterruptedException err) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException err) {
+                this.err.printf("could not run test class `%s' on submission `%s': %s%n",
+                                future.getKey(), submission.getDirectory(), err.getCause());
+                classResult = null;
+            }
+            classResults.put(future.getKey(), classResult);
+        }
+
+        File resultsFile = new File(submission.getDirectory(), BATCH_RESULTS_FILENAME);
+        try (Writer writer = new FileWriter(resultsFile)) {
+            newZucchiniJson().printResultsAsJson(classResults, writer);
+        } catch (IOException err) {
+            this.err.printf("could not write results for submission `%s': %s%n",
+                            submission.getDirectory(), err.getMessage());
+            return;
+        }
+
+        out.printf("graded %s%n", submission.getDirectory());
+    }
+
+    /**
+     * Grades each submission read from {@code in}, written as a line of a
+     * batch manifest, and answers it with one line of compact JSON: the
+     * same object {@code --batch} would write to its results file, or an
+     * object with just an {@code "error"} if the line is not a valid
+     * request. Returns when {@code in} runs out.
+     */
+    private void serveRequests(BufferedReader in, Writer out) throws IOException {
+        // One result per line, whatever --compact says
+        ZucchiniJson zucchiniJson = new ZucchiniJson(MAX_FAILURES, metrics, true);
+
+        String line;
+        while ((line = in.readLine()) != null) {
+            BatchSubmission submission;
+            try {
+                submission = BatchSubmission.parse(line);
+            } catch (IllegalArgumentException err) {
+                zucchiniJson.printErrorAsJson(err.getMessage(), out);
+                out.write('\n');
+                out.flush();
+                continue;
+            }
+
+            if (submission == null) {
+                continue;
+            }
+
+            Map<String, TestClassResult> classResults = new LinkedHashMap<>();
+            for (String testClassName : submission.getTestClassNames()) {
+                TestClassResult classResult;
+                try {
+                    classResult = runTestClass(testClassName, submission.getDirectory());
+                } catch (RuntimeException err) {
+                    this.err.printf("could not run test class `%s' on submission `%s': %s%n",
+                                    testClassName, submission.getDirectory(), err);
+                    classResult = null;
+                }
+                classResults.put(testClassName, classResult);
+            }
+
+            zucchiniJson.printResultsAsJson(classResults, out);
+            out.write('\n');
+            out.flush();
+        }
+    }
+
+    private void serveConnections(int port, int jobs) throws IOException {
+        // Anyone who can connect can make us load any file, so only listen
+        // on loopback
+        try (ServerSocket server = new ServerSocket(port, 0, InetAddress.getLoopbackAddress())) {
+            // Port 0 picks a free port, so say which one we got
+            err.printf("listening on port %d%n", server.getLocalPort());
+
+            // Like --batch --jobs N, serve up to N connections at once, each
+            // on its own thread with its own JUnit launcher. Any more wait
+            // their turn
+            ExecutorService pool = Executors.newFixedThreadPool(jobs);
+            try {
+                while (true) {
+                    Socket socket = server.accept();
+                    pool.submit(() -> serveConnection(socket));
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    private void serveConnection(Socket socket) {
+        try (Socket closeMe = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8))) {
+            serveRequests(in, out);
+        } catch (IOException err) {
+            this.err.printf("lost connection to %s: %s%n", socket.getRemoteSocketAddress(), err.getMessage());
+        }
     }
 
     public void printStudentSummary(boolean verbose) {
@@ -123,7 +445,7 @@ public class TesterLauncher {
 
                 int numFailedPrinted = 0;
 
-                for (TestMethodResult methodResult : classResult.getMethodResults()) {
+                for (TestMethodResult methodResult : keptFailures(classResult)) {
                     if (methodResult.getResult().getStatus() != SUCCESSFUL) {
                         if (!printedSuite) {
                             out.printf("%nTest Suite: %s:%n", classResult.getId().getDisplayName());
@@ -150,10 +472,41 @@ public class TesterLauncher {
         }
     }
 
-    public void printZucchiniJsonSummary() {
-        // Only ran one class so should be just one TestClassResult
-        TestClassResult classResult = results.stream().findFirst().get();
-        new ZucchiniJson(MAX_FAILURES).printResultsAsJson(classResult, out);
+    // The first few failures of each method, in method name order
+    private static List<TestMethodResult> keptFailures(TestClassResult classResult) {
+        List<TestMethodResult> failures = new ArrayList<>();
+        for (TestMethodSummary summary : classResult.getMethodSummaries()) {
+            failures.addAll(summary.getFailures());
+        }
+        return failures;
+    }
+
+    /**
+     * Prints how long each test class took to load and run, and its
+     * slowest test methods (counting every invocation), so that we can
+     * tell which tests are expensive.
+     */
+    public void printMetricsSummary() {
+        out.printf("%nSimulation metrics:%n");
+
+        for (TestClassResult classResult : results) {
+            TestMetrics classMetrics = classResult.getMetrics();
+            if (classMetrics == null) {
+                continue;
+            }
+
+            out.printf("%nTest Suite: %s: loaded circuit in %.3f ms, ran in %.3f ms%n",
+                       classResult.getId().getDisplayName(),
+                       classMetrics.getLoadNanos() / 1e6, classMetrics.getWallNanos() / 1e6);
+
+            classResult.getMethodSummaries().stream()
+                       .sorted(Comparator.comparingLong(TestMethodSummary::getWallNanos).reversed())
+                       .limit(SLOWEST_TESTS_SHOWN)
+                       .forEach(summary -> out.printf(
+                           "\t%s: %.3f ms over %d runs, %d propagations, %d cycles%n",
+                           summary.getMethodName(), summary.getWallNanos() / 1e6, summary.getTotal(),
+                           summary.getPropagations(), summary.getCycles()));
+        }
     }
 
     private boolean wasSuccessful() {
@@ -170,9 +523,25 @@ public class TesterLauncher {
         return true;
     }
 
-    private LauncherDiscoveryRequest buildDiscoveryRequest(String testClassName) {
+    private LauncherDiscoveryRequest buildDiscoveryRequest(String testClassName,
+                                                          File submissionDirectory) {
         LauncherDiscoveryRequestBuilder builder = new LauncherDiscoveryRequestBuilder();
 
+        if (submissionDirectory != null) {
+            builder.configurationParameter(CircuitSimExtension.SUBMISSION_DIRECTORY_PARAMETER,
+                                           submissionDirectory.getPath());
+        }
+
+        if (failFastAfter > 0) {
+            builder.configurationParameter(CircuitSimExtension.FAIL_FAST_PARAMETER,
+                                           Integer.toString(failFastAfter));
+        }
+
+        if (timeoutMillis > 0) {
+            builder.configurationParameter(CircuitSimExtension.TIMEOUT_PARAMETER,
+                                           Integer.toString(timeoutMillis));
+        }
+
         if (testClassName == null) {
             builder.selectors(selectPackage(pkg));
         } else {
@@ -182,4 +551,68 @@ public class TesterLauncher {
 
         return builder.build();
     }
+
+    /**
+     * One line of a batch manifest: a submission directory followed by the
+     * names of the test classes to run against it, separated by whitespace.
+     * Blank lines and lines starting with {@code #} are ignored.
+     */
+    private static class BatchSubmission {
+        private File directory;
+        private List<String> testClassNames;
+
+        private BatchSubmission(File directory, List<String> testClassNames) {
+            this.directory = directory;
+            this.testClassNames = testClassNames;
+        }
+
+        public File getDirectory() { return directory; }
+        public List<String> getTestClassNames() { return testClassNames; }
+
+        public static List<BatchSubmission> parseManifest(File manifest) throws IOException {
+            List<BatchSubmission> submissions = new ArrayList<>();
+
+            try (BufferedReader reader = new BufferedReader(new FileReader(manifest))) {
+                String line;
+                int lineNumber = 0;
+                while ((line = reader.readLine()) != null) {
+                    lineNumber++;
+
+                    BatchSubmission submission;
+                    try {
+                        submission = parse(line);
+                    } catch (IllegalArgumentException err) {
+                        throw new IOException(String.format("line %d: %s", lineNumber, err.getMessage()));
+                    }
+
+                    if (submission != null) {
+                        submissions.add(submission);
+                    }
+                }
+            }
+
+            return submissions;
+        }
+
+        /**
+         * Parses one manifest line, returning {@code null} for a blank line
+         * or a comment.
+         */
+        public static BatchSubmission parse(String line) {
+            line = line.trim();
+
+            if (line.isEmpty() || line.startsWith("#")) {
+                return null;
+            }
+
+            String[] pieces = line.split("\\s+");
+            if (pieces.length < 2) {
+                throw new IllegalArgumentException(
+                    "expected a submission directory followed by at least one test class");
+            }
+
+            return new BatchSubmission(new File(pieces[0]),
+                                       Arrays.asList(pieces).subList(1, pieces.length));
+        }
+    }
 }
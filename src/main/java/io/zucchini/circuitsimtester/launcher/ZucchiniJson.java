@@ -2,111 +2,268 @@ package io.zucchini.circuitsimtester.launcher;
 
 import static org.junit.platform.engine.TestExecutionResult.Status.SUCCESSFUL;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Comparator;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
 
+/**
+ * Writes test results in the JSON format the Zucchini CircuitSim grader
+ * reads. Writes straight to the output with a Gson {@code JsonWriter}
+ * instead of building a tree of objects first, and only ever holds a
+ * {@link TestMethodSummary} per test method, so memory stays flat however
+ * many invocations a {@code @ParameterizedTest} has.
+ */
 public class ZucchiniJson {
     private int maxFailuresPerTest;
-    private Gson gson;
+    private boolean includeMetrics;
+    private boolean compact;
 
     public ZucchiniJson(int maxFailuresPerTest) {
+        this(maxFailuresPerTest, false);
+    }
+
+    public ZucchiniJson(int maxFailuresPerTest, boolean includeMetrics) {
+        this(maxFailuresPerTest, includeMetrics, false);
+    }
+
+    /**
+     * @param includeMetrics also print the {@link TestMetrics} of every
+     *                       test class and the totals for every test
+     *                       method, under {@code "metrics"}
+     * @param compact        print everything on one line instead of
+     *                       pretty-printing
+     */
+    public ZucchiniJson(int maxFailuresPerTest, boolean includeMetrics, boolean compact) {
         this.maxFailuresPerTest = maxFailuresPerTest;
-        this.gson = new GsonBuilder().setPrettyPrinting().create();
+        this.includeMetrics = includeMetrics;
+        this.compact = compact;
     }
 
     public void printResultsAsJson(TestClassResult classResult, Appendable out) {
-        ZucchiniJsonRoot root;
+        try {
+            JsonWriter json = newJsonWriter(out);
+            writeClassResult(json, classResult);
+            json.flush();
+        } catch (IOException err) {
+            throw new UncheckedIOException(err);
+        }
+    }
+
+    /**
+     * Prints one object mapping each test class name to the same JSON
+     * {@link #printResultsAsJson(TestClassResult, Appendable)} would print
+     * for it. A {@code null} result means the class never ran.
+     */
+    public void printResultsAsJson(Map<String, TestClassResult> classResults, Appendable out) {
+        try {
+            JsonWriter json = newJsonWriter(out);
+            json.beginObject();
+
+            for (Map.Entry<String, TestClassResult> entry : classResults.entrySet()) {
+                json.name(entry.getKey());
+                if (entry.getValue() == null) {
+                    writeDidNotRun(json, entry.getKey());
+                } else {
+                    writeClassResult(json, entry.getValue());
+                }
+            }
+
+            json.endObject();
+            json.flush();
+        } catch (IOException err) {
+            throw new UncheckedIOException(err);
+        }
+    }
+
+    /**
+     * Prints the same error {@link #printResultsAsJson(Map, Appendable)}
+     * prints for a test class that never ran, so that there is always
+     * something for Zucchini to read.
+     */
+    public void printDidNotRunAsJson(String testClassName, Appendable out) {
+        try {
+            JsonWriter json = newJsonWriter(out);
+            writeDidNotRun(json, testClassName);
+            json.flush();
+        } catch (IOException err) {
+            throw new UncheckedIOException(err);
+        }
+    }
+
+    /**
+     * Prints an object whose {@code "error"} is the message given, the
+     * same way a test class that failed to run is printed.
+     */
+    public void printErrorAsJson(String message, Appendable out) {
+        try {
+            JsonWriter json = newJsonWriter(out);
+            writeError(json, message);
+            json.flush();
+        } catch (IOException err) {
+            throw new UncheckedIOException(err);
+        }
+    }
+
+    private JsonWriter newJsonWriter(Appendable out) {
+        JsonWriter json = new JsonWriter(asWriter(out));
+        // Escape the same characters Gson did when we printed through it
+        json.setHtmlSafe(true);
+        if (!compact) {
+            json.setIndent("  ");
+        }
+        return json;
+    }
+
+    private static Writer asWriter(Appendable out) {
+        if (out instanceof Writer) {
+            return (Writer) out;
+        }
+
+        return new Writer() {
+            @Override
+            public void write(char[] chars, int offset, int length) throws IOException {
+                out.append(CharBuffer.wrap(chars, offset, length));
+            }
+
+            @Override
+            public void write(String string, int offset, int length) throws IOException {
+                out.append(string, offset, offset + length);
+            }
+
+            @Override
+            public void flush() {}
+
+            @Override
+            public void close() {}
+        };
+    }
+
+    private void writeClassResult(JsonWriter json, TestClassResult classResult) throws IOException {
         boolean success = classResult.getResult().getStatus() == SUCCESSFUL;
+        List<TestMethodSummary> summaries = summarize(classResult);
+
+        json.beginObject();
 
         // Zucchini treats an error as a 0, so don't bother writing test
         // results unless there were no errors.
         if (success) {
-            root = new ZucchiniJsonRoot(collapseMethodResults(
-                classResult.getMethodResults()));
+            json.name("tests").beginArray();
+            for (TestMethodSummary summary : summaries) {
+                writeMethodSummary(json, summary);
+            }
+            json.endArray();
         } else {
-            root = new ZucchiniJsonRoot(
-                classResult.getResult().getThrowable().get().getMessage());
+            // Like Gson, and like partialFailures below, leave out a null
+            // message rather than print null
+            String message = classResult.getResult().getThrowable().map(Throwable::getMessage).orElse(null);
+            if (message != null) {
+                json.name("error").value(message);
+            }
+        }
+
+        if (includeMetrics) {
+            writeClassMetrics(json, classResult.getMetrics(), summaries);
         }
 
-        gson.toJson(root, out);
+        json.endObject();
     }
 
-    // Assumes results is sorted by method name
-    private List<ZucchiniJsonMethod> collapseMethodResults(
-            Collection<TestMethodResult> results) {
-        Map<String, ZucchiniJsonMethod> collapsed = new HashMap<>();
+    private static void writeDidNotRun(JsonWriter json, String testClassName) throws IOException {
+        writeError(json, String.format("test class `%s' did not run", testClassName));
+    }
 
-        for (TestMethodResult result : results) {
-            String methodName = result.getSource().getMethodName();
-            ZucchiniJsonMethod method = collapsed.computeIfAbsent(methodName, ZucchiniJsonMethod::new);
+    private static void writeError(JsonWriter json, String message) throws IOException {
+        json.beginObject();
+        json.name("error").value(message);
+        json.endObject();
+    }
 
-            method.total++;
-            if (result.getResult().getStatus() != SUCCESSFUL &&
-                    ++method.failed <= maxFailuresPerTest) {
-                method.partialFailures.add(
-                    ZucchiniJsonMethodFailure.fromMethodResult(result));
-            }
+    // TestListener either summarized methods already or kept every result
+    private List<TestMethodSummary> summarize(TestClassResult classResult) {
+        Map<String, TestMethodSummary> summaries = new HashMap<>();
+
+        for (TestMethodSummary summary : classResult.getMethodSummaries()) {
+            summaries.put(summary.getMethodName(), summary);
         }
 
-        List<ZucchiniJsonMethod> objects = new ArrayList<>(collapsed.values());
-        objects.sort(Comparator.comparing(m -> m.methodName));
+        for (TestMethodResult result : classResult.getMethodResults()) {
+            String methodName = result.getSource().getMethodName();
+            summaries.computeIfAbsent(methodName, name -> new TestMethodSummary(name, maxFailuresPerTest))
+                     .add(result);
+        }
 
-        return objects;
+        List<TestMethodSummary> sorted = new ArrayList<>(summaries.values());
+        sorted.sort(null);
+        return sorted;
     }
 
-    private static class ZucchiniJsonRoot {
-        private String error;
-        private List<ZucchiniJsonMethod> tests;
+    private void writeMethodSummary(JsonWriter json, TestMethodSummary summary) throws IOException {
+        json.beginObject();
+        json.name("methodName").value(summary.getMethodName());
+        json.name("failed").value(summary.getFailed());
+        json.name("total").value(summary.getTotal());
 
-        public ZucchiniJsonRoot() {
-            this.tests = new LinkedList<>();
+        json.name("partialFailures").beginArray();
+        for (TestMethodResult failure : summary.getFailures()) {
+            json.beginObject();
+            json.name("displayName").value(failure.getId().getDisplayName());
+            // Like Gson, leave out a null message rather than print null
+            String message = failure.getResult().getThrowable().map(Throwable::getMessage).orElse(null);
+            if (message != null) {
+                json.name("message").value(message);
+            }
+            json.endObject();
         }
+        json.endArray();
 
-        public ZucchiniJsonRoot(String error) {
-            this.error = error;
+        if (includeMetrics) {
+            json.name("metrics").beginObject();
+            json.name("wallMillis").value(millis(summary.getWallNanos()));
+            json.name("simulationMillis").value(millis(summary.getSimulationNanos()));
+            json.name("propagations").value(summary.getPropagations());
+            json.name("cycles").value(summary.getCycles());
+            json.endObject();
         }
 
-        public ZucchiniJsonRoot(List<ZucchiniJsonMethod> tests) {
-            this.tests = tests;
-        }
+        json.endObject();
     }
 
-    private static class ZucchiniJsonMethod {
-        private String methodName;
-        private int failed;
-        private int total;
-        private List<ZucchiniJsonMethodFailure> partialFailures;
-
-        public ZucchiniJsonMethod(String methodName) {
-            this.methodName = methodName;
-            this.failed = 0;
-            this.total = 0;
-            this.partialFailures = new LinkedList<>();
+    // classMetrics is null if nobody measured the class, in which case
+    // the wall time is the total over its tests
+    private static void writeClassMetrics(JsonWriter json, TestMetrics classMetrics,
+                                          Collection<TestMethodSummary> summaries) throws IOException {
+        long wallNanos = 0;
+        long simulationNanos = 0;
+        long propagations = 0;
+        long cycles = 0;
+        for (TestMethodSummary summary : summaries) {
+            wallNanos += summary.getWallNanos();
+            simulationNanos += summary.getSimulationNanos();
+            propagations += summary.getPropagations();
+            cycles += summary.getCycles();
         }
-    }
 
-    private static class ZucchiniJsonMethodFailure {
-        private String displayName;
-        private String message;
-
-        public ZucchiniJsonMethodFailure(String displayName, String message) {
-            this.displayName = displayName;
-            this.message = message;
+        json.name("metrics").beginObject();
+        json.name("wallMillis").value(millis((classMetrics == null)? wallNanos : classMetrics.getWallNanos()));
+        if (classMetrics != null) {
+            json.name("loadMillis").value(millis(classMetrics.getLoadNanos()));
         }
+        json.name("simulationMillis").value(millis(simulationNanos));
+        json.name("propagations").value(propagations);
+        json.name("cycles").value(cycles);
+        json.endObject();
+    }
 
-        public static ZucchiniJsonMethodFailure fromMethodResult(TestMethodResult result) {
-            String displayName = result.getId().getDisplayName();
-            String message = result.getResult().getThrowable().map(err -> err.getMessage())
-                                                              .orElse(null);
-            return new ZucchiniJsonMethodFailure(displayName, message);
-        }
+    // Microsecond precision is plenty, and keeps the JSON short
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1e3) / 1e3;
     }
 }